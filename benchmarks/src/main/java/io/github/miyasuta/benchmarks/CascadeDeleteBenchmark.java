@@ -0,0 +1,131 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Delete;
+import com.sap.cds.ql.cqn.CqnDelete;
+import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.services.ServiceCatalog;
+import com.sap.cds.services.cds.CdsDeleteEventContext;
+import com.sap.cds.services.draft.DraftCancelEventContext;
+import com.sap.cds.services.request.UserInfo;
+import com.sap.cds.services.runtime.CdsRuntime;
+import io.github.miyasuta.SoftDeleteHandler;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cascading soft deletes (onDelete and onDraftCancel) against an in-memory H2 database.
+ * The "tree" parameter is "fanOut x depth": one root with fanOut children per node on each of depth levels.
+ * onDelete deletes the root, onDraftCancel discards the first level-1 draft child (the draft root itself
+ * is deleted physically). Besides the average time per delete, the statements sent to the persistence
+ * service and the rows they touched are reported per delete.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class CascadeDeleteBenchmark {
+
+    // Larger trees (e.g. 100x3 or 1000x2, about one million rows per table chain) can be passed with -p tree=...
+    @Param({ "1x1", "1x5", "10x1", "10x2", "10x3", "10x4", "10x5", "100x1", "100x2", "1000x1" })
+    public String tree;
+
+    @Param({ "set", "row" })
+    public String cascadeMode;
+
+    /**
+     * Statements and rows touched by the last delete; constant for a given tree, so the reported value is per delete.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class PerDelete {
+        public long statements;
+        public long rowsTouched;
+    }
+
+    private final SoftDeleteHandler handler = new SoftDeleteHandler();
+    private final H2Database.StatementCounter counter = new H2Database.StatementCounter();
+    private H2Database database;
+    private CdsRuntime runtime;
+    private ServiceCatalog serviceCatalog;
+    private UserInfo user;
+    private CqnDelete activeDelete;
+    private CqnDelete draftCancel;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        String[] dimensions = tree.split("x");
+        int fanOut = Integer.parseInt(dimensions[0]);
+        int depth = Integer.parseInt(dimensions[1]);
+
+        CdsModel model = SyntheticModel.createWithDrafts(depth);
+        database = new H2Database(model);
+        database.insertTree(SyntheticModel::entityName, depth, fanOut, Map.of());
+        database.insertTree(SyntheticModel::draftEntityName, depth, fanOut, Map.of("IsActiveEntity", true));
+        database.insertTree(level -> SyntheticModel.draftEntityName(level) + "_drafts", depth, fanOut,
+            Map.of("IsActiveEntity", false, "HasActiveEntity", true));
+
+        runtime = Stubs.runtime(Map.of(SoftDeleteConfig.PROPERTY_CASCADE_MODE, cascadeMode));
+        serviceCatalog = Stubs.serviceCatalog(database.persistenceService(counter));
+        user = Stubs.of(UserInfo.class, Map.of("getName", args -> "benchmark"));
+
+        activeDelete = Delete.from(CQL.entity(SyntheticModel.entityName(0))
+            .filter(CQL.get("ID").eq(SyntheticModel.ROOT_ID)).asRef());
+        draftCancel = Delete.from(CQL.entity(SyntheticModel.draftEntityName(1))
+            .filter(CQL.and(CQL.get("ID").eq(H2Database.childId(1, 0)), CQL.get("IsActiveEntity").eq(false))).asRef());
+    }
+
+    @Setup(Level.Invocation)
+    public void resetTree() throws SQLException {
+        database.resetSoftDeleteColumns();
+        counter.reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public void onDelete(PerDelete perDelete) {
+        handler.onDelete(Stubs.of(CdsDeleteEventContext.class, contextAnswers(activeDelete,
+            SyntheticModel.entityName(0))));
+        record(perDelete);
+    }
+
+    @Benchmark
+    public void onDraftCancel(PerDelete perDelete) {
+        handler.onDraftCancel(Stubs.of(DraftCancelEventContext.class, contextAnswers(draftCancel,
+            SyntheticModel.draftEntityName(1))));
+        record(perDelete);
+    }
+
+    private void record(PerDelete perDelete) {
+        perDelete.statements = counter.statements;
+        perDelete.rowsTouched = counter.rowsTouched;
+    }
+
+    private Map<String, Stubs.Answer> contextAnswers(CqnDelete delete, String targetName) {
+        CdsModel model = database.getModel();
+        Map<String, Stubs.Answer> answers = new HashMap<>();
+        answers.put("getCqn", args -> delete);
+        answers.put("getModel", args -> model);
+        answers.put("getTarget", args -> model.getEntity(targetName));
+        answers.put("getCdsRuntime", args -> runtime);
+        answers.put("getServiceCatalog", args -> serviceCatalog);
+        answers.put("getUserInfo", args -> user);
+        answers.put("setResult", args -> null);
+        answers.put("setCompleted", args -> null);
+        answers.put("proceed", args -> {
+            throw new IllegalStateException("Delete of " + targetName + " was not handled as soft delete");
+        });
+        return answers;
+    }
+}
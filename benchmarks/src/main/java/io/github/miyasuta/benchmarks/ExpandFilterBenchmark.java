@@ -0,0 +1,55 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.ql.Predicate;
+import com.sap.cds.ql.cqn.CqnSelectListItem;
+import com.sap.cds.reflect.CdsModel;
+import io.github.miyasuta.util.EntityMetadata;
+import io.github.miyasuta.util.EntityMetadataRegistry;
+import io.github.miyasuta.util.ExpandFilterBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ExpandFilterBuilder.addFilterToExpandItem for nested expands of increasing depth,
+ * with a constant isDeleted filter and with the inline parent state filter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExpandFilterBenchmark {
+
+    @Param({ "1", "3", "5" })
+    public int expandDepth;
+
+    private CdsModel model;
+    private EntityMetadataRegistry registry;
+    private EntityMetadata root;
+    private CqnSelectListItem expand;
+    private Predicate inlineFilter;
+
+    @Setup
+    public void setup() {
+        // The registry only holds the model weakly
+        model = SyntheticModel.create(SyntheticModel.MAX_DEPTH);
+        registry = EntityMetadataRegistry.forModel(model);
+        root = registry.get(SyntheticModel.entityName(0));
+        expand = SyntheticModel.expand(expandDepth);
+        inlineFilter = ExpandFilterBuilder.inlineParentIsDeletedFilter(root.getDbEntityName(),
+            Map.of("ID", SyntheticModel.ROOT_ID));
+    }
+
+    @Benchmark
+    public CqnSelectListItem constantFilter() {
+        return ExpandFilterBuilder.addFilterToExpandItem(expand, registry, root, Boolean.FALSE);
+    }
+
+    @Benchmark
+    public CqnSelectListItem inlineParentStateFilter() {
+        return ExpandFilterBuilder.addFilterToExpandItem(expand, registry, root, inlineFilter);
+    }
+}
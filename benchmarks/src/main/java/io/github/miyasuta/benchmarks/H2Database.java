@@ -0,0 +1,246 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.CdsDataStore;
+import com.sap.cds.CdsDataStoreConnector;
+import com.sap.cds.Result;
+import com.sap.cds.ql.cqn.CqnDelete;
+import com.sap.cds.ql.cqn.CqnInsert;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.ql.cqn.CqnUpdate;
+import com.sap.cds.reflect.CdsBaseType;
+import com.sap.cds.reflect.CdsElement;
+import com.sap.cds.reflect.CdsEntity;
+import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.reflect.CdsSimpleType;
+import com.sap.cds.services.persistence.PersistenceService;
+import com.sap.cds.transaction.TransactionManager;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory H2 database with the tables of a CDS model, accessed through the cds4j JDBC data store.
+ * Provides a PersistenceService stub that executes statements on the database and counts them.
+ */
+public final class H2Database implements AutoCloseable {
+
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    private final CdsModel model;
+    private final Connection connection;
+    private final CdsDataStore dataStore;
+
+    /**
+     * Statements executed through the PersistenceService stub and rows they touched (updated, inserted or deleted).
+     */
+    public static final class StatementCounter {
+        public long statements;
+        public long rowsTouched;
+
+        public void reset() {
+            statements = 0;
+            rowsTouched = 0;
+        }
+    }
+
+    public H2Database(CdsModel model) throws SQLException {
+        this.model = model;
+        this.connection = DriverManager.getConnection(
+            "jdbc:h2:mem:softdelete-bench-" + databaseCount.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        this.connection.setAutoCommit(true);
+        createTables();
+
+        TransactionManager transactionManager = Stubs.of(TransactionManager.class, Map.of(
+            "isActive", args -> true,
+            "setRollbackOnly", args -> null));
+        this.dataStore = CdsDataStoreConnector.createJdbcConnector(model, transactionManager)
+            .connection(this::sharedConnection)
+            .build()
+            .connect();
+    }
+
+    /**
+     * Inserts a tree with the given fan-out: one root (ROOT_ID) and fanOut children per node on each level.
+     * Child IDs are deterministic: new UUID(level, index).
+     */
+    public void insertTree(IntFunction<String> entityNameByLevel, int depth, int fanOut,
+                           Map<String, Object> additionalColumns) throws SQLException {
+        List<String> parentIds = List.of(SyntheticModel.ROOT_ID);
+        insertRows(entityNameByLevel.apply(0), parentIds, null, 0, additionalColumns);
+
+        for (int level = 1; level <= depth; level++) {
+            List<String> ids = new ArrayList<>(parentIds.size() * fanOut);
+            List<String> parentOfIds = new ArrayList<>(parentIds.size() * fanOut);
+            for (String parentId : parentIds) {
+                for (int i = 0; i < fanOut; i++) {
+                    ids.add(childId(level, ids.size()));
+                    parentOfIds.add(parentId);
+                }
+            }
+            insertRows(entityNameByLevel.apply(level), ids, parentOfIds, level, additionalColumns);
+            parentIds = ids;
+        }
+    }
+
+    /**
+     * ID of the index-th node of a level (level > 0).
+     */
+    public static String childId(int level, int index) {
+        return new UUID(level, index).toString();
+    }
+
+    /**
+     * Resets the soft delete columns of all tables, so that the next delete finds the same tree.
+     */
+    public void resetSoftDeleteColumns() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : tableNames()) {
+                statement.executeUpdate("UPDATE " + table + " SET ISDELETED = FALSE, DELETEDAT = NULL, DELETEDBY = NULL"
+                    + " WHERE ISDELETED = TRUE");
+            }
+        }
+    }
+
+    /**
+     * PersistenceService stub that runs statements on this database and records them in the counter.
+     */
+    public PersistenceService persistenceService(StatementCounter counter) {
+        return Stubs.of(PersistenceService.class, Map.of(
+            "run", args -> {
+                if (args.length > 1 && !(args[1] instanceof Object[] params && params.length == 0)) {
+                    throw new UnsupportedOperationException("Parameterized statements are not supported");
+                }
+                counter.statements++;
+                Object statement = args[0];
+                if (statement instanceof CqnSelect select) {
+                    return dataStore.execute(select);
+                }
+                Result result;
+                if (statement instanceof CqnUpdate update) {
+                    result = dataStore.execute(update);
+                } else if (statement instanceof CqnDelete delete) {
+                    result = dataStore.execute(delete);
+                } else if (statement instanceof CqnInsert insert) {
+                    result = dataStore.execute(insert);
+                } else {
+                    throw new UnsupportedOperationException("Unsupported statement: " + statement);
+                }
+                counter.rowsTouched += result.rowCount();
+                return result;
+            }));
+    }
+
+    public CdsModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void createTables() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (CdsEntity entity : (Iterable<CdsEntity>) model.entities()::iterator) {
+                String table = SyntheticModel.tableName(entity.getQualifiedName());
+                List<String> columns = new ArrayList<>();
+                List<String> keys = new ArrayList<>();
+                for (CdsElement element : (Iterable<CdsElement>) entity.elements()::iterator) {
+                    if (!element.getType().isSimple()) {
+                        continue;
+                    }
+                    columns.add(element.getName() + " " + sqlType(element));
+                    if (element.isKey()) {
+                        keys.add(element.getName());
+                    }
+                }
+                statement.execute("CREATE TABLE " + table + " (" + String.join(", ", columns)
+                    + ", PRIMARY KEY (" + String.join(", ", keys) + "))");
+                if (entity.findElement("parent_ID").isPresent()) {
+                    statement.execute("CREATE INDEX " + table + "_PARENT ON " + table + " (parent_ID)");
+                }
+            }
+        }
+    }
+
+    private static String sqlType(CdsElement element) {
+        CdsBaseType type = element.getType().as(CdsSimpleType.class).getType();
+        switch (type) {
+            case UUID:
+                return "VARCHAR(36)";
+            case BOOLEAN:
+                return "BOOLEAN" + element.defaultValue().map(value -> " DEFAULT " + value).orElse("");
+            case TIMESTAMP:
+                return "TIMESTAMP(7)";
+            case STRING:
+                return "VARCHAR(255)";
+            default:
+                throw new IllegalArgumentException("Unsupported type " + type + " of " + element.getName());
+        }
+    }
+
+    private void insertRows(String entityName, List<String> ids, List<String> parentIds, int level,
+                            Map<String, Object> additionalColumns) throws SQLException {
+        List<String> columns = new ArrayList<>(List.of("ID", "name"));
+        if (parentIds != null) {
+            columns.add("parent_ID");
+        }
+        columns.addAll(additionalColumns.keySet());
+        String sql = "INSERT INTO " + SyntheticModel.tableName(entityName) + " (" + String.join(", ", columns)
+            + ") VALUES (" + columns.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+
+        try (PreparedStatement insert = connection.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                int index = 1;
+                insert.setString(index++, ids.get(i));
+                insert.setString(index++, "L" + level + "-" + i);
+                if (parentIds != null) {
+                    insert.setString(index++, parentIds.get(i));
+                }
+                for (Object value : additionalColumns.values()) {
+                    insert.setObject(index++, value);
+                }
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private List<String> tableNames() {
+        return model.entities()
+            .map(entity -> SyntheticModel.tableName(entity.getQualifiedName()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The data store closes connections after use; the shared in-memory connection must stay open.
+     */
+    private Connection sharedConnection() {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName())) {
+                    return null;
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+}
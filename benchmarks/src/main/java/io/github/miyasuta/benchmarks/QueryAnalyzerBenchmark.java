@@ -0,0 +1,44 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.ql.cqn.CqnSelect;
+import io.github.miyasuta.util.QueryAnalyzer;
+import io.github.miyasuta.util.QueryShape;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures QueryAnalyzer: one-pass classification and the individual checks it replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryAnalyzerBenchmark {
+
+    @Param({ "flatList", "byKey", "navigation", "nestedExpand", "byKeyNestedExpand" })
+    public String shape;
+
+    private CqnSelect select;
+
+    @Setup
+    public void setup() {
+        select = ReadRewriteBenchmark.select(shape);
+    }
+
+    @Benchmark
+    public QueryShape classify() {
+        return QueryAnalyzer.classify(select);
+    }
+
+    @Benchmark
+    public void individualChecks(Blackhole blackhole) {
+        blackhole.consume(QueryAnalyzer.isByKeyAccess(select));
+        blackhole.consume(QueryAnalyzer.isNavigationPath(select));
+        blackhole.consume(QueryAnalyzer.isQueryingDraftRecords(select));
+        blackhole.consume(QueryAnalyzer.getIsDeletedValueFromWhere(select));
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.services.ServiceCatalog;
+import com.sap.cds.services.cds.CdsReadEventContext;
+import com.sap.cds.services.runtime.CdsRuntime;
+import io.github.miyasuta.SoftDeleteHandler;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures SoftDeleteHandler.beforeRead for the typical OData read shapes.
+ * The persistence service is stubbed, so by-key and navigation reads measure the cost
+ * of the parent state lookup without database latency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReadRewriteBenchmark {
+
+    @Param({ "flatList", "byKey", "navigation", "nestedExpand", "byKeyNestedExpand" })
+    public String shape;
+
+    @Param({ "query", "inline" })
+    public String parentState;
+
+    private final SoftDeleteHandler handler = new SoftDeleteHandler();
+    private final AtomicLong statementCount = new AtomicLong();
+    private CdsModel model;
+    private CqnSelect select;
+    private CdsRuntime runtime;
+    private ServiceCatalog serviceCatalog;
+
+    @Setup
+    public void setup() {
+        model = SyntheticModel.create(SyntheticModel.MAX_DEPTH);
+        select = select(shape);
+        runtime = Stubs.runtime(Map.of(SoftDeleteConfig.PROPERTY_READ_PARENT_STATE, parentState));
+        serviceCatalog = Stubs.serviceCatalog(
+            Stubs.persistence(List.of(Map.of("isDeleted", false)), statementCount));
+    }
+
+    @Benchmark
+    public CqnSelect beforeRead() {
+        CdsReadEventContext context = Stubs.readContext(model, select, runtime, serviceCatalog);
+        handler.beforeRead(context);
+        return context.getCqn();
+    }
+
+    static CqnSelect select(String shape) {
+        switch (shape) {
+            case "flatList":
+                return SyntheticModel.flatList();
+            case "byKey":
+                return SyntheticModel.byKey();
+            case "navigation":
+                return SyntheticModel.navigation();
+            case "nestedExpand":
+                return SyntheticModel.nestedExpand(SyntheticModel.MAX_DEPTH);
+            case "byKeyNestedExpand":
+                return SyntheticModel.byKeyNestedExpand(SyntheticModel.MAX_DEPTH);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.Result;
+import com.sap.cds.ResultBuilder;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.services.ServiceCatalog;
+import com.sap.cds.services.cds.CdsReadEventContext;
+import com.sap.cds.services.environment.CdsEnvironment;
+import com.sap.cds.services.persistence.PersistenceService;
+import com.sap.cds.services.runtime.CdsRuntime;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal dynamic-proxy stubs of the CAP runtime objects the handlers use,
+ * so the plugin code can be benchmarked without starting an application.
+ * Calls to methods that are not stubbed fail fast with UnsupportedOperationException.
+ */
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    /**
+     * Functional handler for a single stubbed method.
+     */
+    @FunctionalInterface
+    public interface Answer {
+        Object answer(Object[] args);
+    }
+
+    /**
+     * Creates a proxy of the given interface that answers the stubbed methods by name.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T of(Class<T> type, Map<String, Answer> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Answer answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.answer(args != null ? args : new Object[0]);
+            }
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                default:
+                    throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+            }
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * Runtime whose environment returns the given plugin properties and defaults otherwise.
+     */
+    public static CdsRuntime runtime(Map<String, Object> properties) {
+        CdsEnvironment environment = of(CdsEnvironment.class, Map.of(
+            "getProperty", args -> {
+                Object value = properties.get(args[0]);
+                return value != null ? value : (args.length > 2 ? args[2] : null);
+            }));
+        return of(CdsRuntime.class, Map.of("getEnvironment", args -> environment));
+    }
+
+    /**
+     * Persistence service that answers every SELECT with the given rows and counts the statements it receives.
+     */
+    public static PersistenceService persistence(List<Map<String, Object>> rows, AtomicLong statementCount) {
+        Result result = ResultBuilder.selectedRows(rows).result();
+        return of(PersistenceService.class, Map.of(
+            "run", args -> {
+                statementCount.incrementAndGet();
+                return result;
+            }));
+    }
+
+    /**
+     * Service catalog that returns the given persistence service.
+     */
+    public static ServiceCatalog serviceCatalog(PersistenceService db) {
+        return of(ServiceCatalog.class, Map.of("getService", args -> db));
+    }
+
+    /**
+     * READ event context for the target entity of the statement; getCqn returns the latest statement set.
+     */
+    public static CdsReadEventContext readContext(CdsModel model, CqnSelect select, CdsRuntime runtime,
+                                                  ServiceCatalog serviceCatalog) {
+        CqnSelect[] cqn = { select };
+        String targetName = select.ref().targetSegment().id();
+        return of(CdsReadEventContext.class, Map.of(
+            "getCqn", args -> cqn[0],
+            "setCqn", args -> {
+                cqn[0] = (CqnSelect) args[0];
+                return null;
+            },
+            "getModel", args -> model,
+            "getTarget", args -> resolveTarget(model, select, targetName),
+            "getCdsRuntime", args -> runtime,
+            "getServiceCatalog", args -> serviceCatalog,
+            "getEvent", args -> "READ"));
+    }
+
+    private static Object resolveTarget(CdsModel model, CqnSelect select, String targetName) {
+        // Navigation paths target the entity of the last association
+        if (select.ref().segments().size() > 1) {
+            var entity = model.getEntity(select.ref().rootSegment().id());
+            for (var segment : select.ref().segments().subList(1, select.ref().segments().size())) {
+                entity = entity.getTargetOf(segment.id());
+            }
+            return entity;
+        }
+        return model.getEntity(targetName);
+    }
+}
@@ -0,0 +1,167 @@
+package io.github.miyasuta.benchmarks;
+
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Select;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.ql.cqn.CqnSelectListItem;
+import com.sap.cds.reflect.CdsModel;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Synthetic CDS model and CQN statements used by the benchmarks.
+ * The model is a chain of soft-delete enabled entities bench.Level0 ... bench.Level[depth],
+ * where each level has a composition of many "children" of the next level
+ * and a managed "parent" association back to the previous level.
+ * Optionally, the same chain is added as a draft-enabled variant with its draft tables.
+ */
+public final class SyntheticModel {
+
+    public static final String NAMESPACE = "bench.";
+    public static final int MAX_DEPTH = 5;
+    public static final String ROOT_ID = "7e0a4f3c-1f6b-4c8e-9a5d-2b3c4d5e6f70";
+
+    private SyntheticModel() {
+    }
+
+    public static String entityName(int level) {
+        return NAMESPACE + "Level" + level;
+    }
+
+    /**
+     * Name of the draft-enabled variant of a level; its draft table is the name with suffix "_drafts".
+     */
+    public static String draftEntityName(int level) {
+        return NAMESPACE + "DraftLevel" + level;
+    }
+
+    /**
+     * Reads the synthetic model with the given composition depth.
+     */
+    public static CdsModel create(int depth) {
+        return read(csn(depth, false));
+    }
+
+    /**
+     * Reads the synthetic model with the given composition depth, including the draft-enabled variant
+     * (bench.DraftLevel0 ... with @odata.draft.enabled on the root and bench.DraftLevelN_drafts tables).
+     */
+    public static CdsModel createWithDrafts(int depth) {
+        return read(csn(depth, true));
+    }
+
+    private static CdsModel read(String csn) {
+        return CdsModel.read(new ByteArrayInputStream(csn.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Builds the CSN of the synthetic model.
+     */
+    public static String csn(int depth, boolean withDrafts) {
+        StringBuilder csn = new StringBuilder("{\"definitions\":{");
+        for (int level = 0; level <= depth; level++) {
+            appendEntity(csn, level, depth, false, false);
+            if (withDrafts) {
+                appendEntity(csn, level, depth, true, false);
+                appendEntity(csn, level, depth, true, true);
+            }
+        }
+        csn.setLength(csn.length() - 1);
+        return csn.append("}}").toString();
+    }
+
+    private static void appendEntity(StringBuilder csn, int level, int depth, boolean draftEnabled, boolean draftTable) {
+        String name = draftEnabled ? draftEntityName(level) : entityName(level);
+        csn.append('"').append(name).append(draftTable ? "_drafts" : "").append("\":{\"kind\":\"entity\",");
+        if (!draftTable) {
+            csn.append("\"@softdelete.enabled\":true,");
+        }
+        if (draftEnabled && !draftTable && level == 0) {
+            csn.append("\"@odata.draft.enabled\":true,");
+        }
+        csn.append("\"elements\":{\"ID\":{\"key\":true,\"type\":\"cds.UUID\"},");
+        if (draftEnabled) {
+            csn.append("\"IsActiveEntity\":{\"key\":true,\"type\":\"cds.Boolean\",\"default\":{\"val\":true}},")
+                .append("\"HasActiveEntity\":{\"type\":\"cds.Boolean\",\"default\":{\"val\":false}},")
+                .append("\"HasDraftEntity\":{\"type\":\"cds.Boolean\",\"default\":{\"val\":false}},");
+        }
+        csn.append("\"name\":{\"type\":\"cds.String\",\"length\":100},")
+            .append("\"isDeleted\":{\"type\":\"cds.Boolean\",\"default\":{\"val\":false}},")
+            .append("\"deletedAt\":{\"type\":\"cds.Timestamp\"},")
+            .append("\"deletedBy\":{\"type\":\"cds.String\",\"length\":255}");
+        // Associations are only modeled between the entities themselves; draft tables just carry the foreign key
+        String prefix = draftEnabled ? NAMESPACE + "DraftLevel" : NAMESPACE + "Level";
+        if (level > 0) {
+            if (!draftTable) {
+                csn.append(",\"parent\":{\"type\":\"cds.Association\",\"target\":\"").append(prefix).append(level - 1)
+                    .append("\",\"keys\":[{\"ref\":[\"ID\"]}]}");
+            }
+            csn.append(",\"parent_ID\":{\"type\":\"cds.UUID\"").append(draftTable ? "" : ",\"@odata.foreignKey4\":\"parent\"")
+                .append('}');
+        }
+        if (level < depth && !draftTable) {
+            csn.append(",\"children\":{\"type\":\"cds.Composition\",\"cardinality\":{\"max\":\"*\"},\"target\":\"")
+                .append(prefix).append(level + 1)
+                .append("\",\"on\":[{\"ref\":[\"children\",\"parent\",\"ID\"]},\"=\",{\"ref\":[\"ID\"]}]}");
+        }
+        csn.append("}},");
+    }
+
+    /**
+     * Database table name of an entity, following the CAP naming convention (dots replaced by underscores).
+     */
+    public static String tableName(String entityName) {
+        return entityName.replace('.', '_').toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * List read of the root entity with a non-key filter, e.g. GET /Level0?$filter=name eq 'x'.
+     */
+    public static CqnSelect flatList() {
+        return Select.from(entityName(0)).columns(CQL.star()).where(CQL.get("name").eq("x")).limit(100);
+    }
+
+    /**
+     * By-key read of the root entity, e.g. GET /Level0(ID=...).
+     */
+    public static CqnSelect byKey() {
+        return Select.from(CQL.entity(entityName(0)).filter(CQL.get("ID").eq(ROOT_ID)).asRef()).columns(CQL.star());
+    }
+
+    /**
+     * Navigation from a keyed root to its children, e.g. GET /Level0(ID=...)/children.
+     */
+    public static CqnSelect navigation() {
+        return Select.from(CQL.entity(entityName(0)).filter(CQL.get("ID").eq(ROOT_ID)).to("children").asRef())
+            .columns(CQL.star());
+    }
+
+    /**
+     * List read of the root entity with nested expands down to the given depth,
+     * e.g. GET /Level0?$expand=children($expand=children(...)).
+     */
+    public static CqnSelect nestedExpand(int depth) {
+        return Select.from(entityName(0)).columns(CQL.star(), expand(depth)).limit(100);
+    }
+
+    /**
+     * By-key read of the root entity with nested expands down to the given depth.
+     */
+    public static CqnSelect byKeyNestedExpand(int depth) {
+        return Select.from(CQL.entity(entityName(0)).filter(CQL.get("ID").eq(ROOT_ID)).asRef())
+            .columns(CQL.star(), expand(depth));
+    }
+
+    /**
+     * Builds the nested "children" expand with the given number of levels.
+     */
+    public static CqnSelectListItem expand(int levels) {
+        CqnSelectListItem expand = CQL.to("children").expand();
+        for (int level = 1; level < levels; level++) {
+            expand = CQL.to("children").expand(CQL.star(), expand);
+        }
+        return expand;
+    }
+}
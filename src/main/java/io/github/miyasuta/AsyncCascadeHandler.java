@@ -0,0 +1,153 @@
+package io.github.miyasuta;
+
+import com.sap.cds.reflect.CdsElement;
+import com.sap.cds.reflect.CdsEntity;
+import com.sap.cds.reflect.CdsSimpleType;
+import com.sap.cds.services.cds.CdsDeleteEventContext;
+import com.sap.cds.services.handler.EventHandler;
+import com.sap.cds.services.handler.annotations.On;
+import com.sap.cds.services.handler.annotations.ServiceName;
+import com.sap.cds.services.outbox.OutboxMessage;
+import com.sap.cds.services.outbox.OutboxMessageEventContext;
+import com.sap.cds.services.outbox.OutboxService;
+import com.sap.cds.services.persistence.PersistenceService;
+import com.sap.cds.services.runtime.CdsRuntime;
+import io.github.miyasuta.util.CascadeDeleteHandler;
+import io.github.miyasuta.util.ChunkTransactions;
+import io.github.miyasuta.util.EntityMetadata;
+import io.github.miyasuta.util.EntityMetadataRegistry;
+import io.github.miyasuta.util.ParentStateCache;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Runs the cascade of entities annotated with @softdelete.cascade: 'async' in the background.
+ * The DELETE soft-deletes the root and submits a cascade job to CAP's persistent outbox in the same transaction;
+ * this handler processes the job and soft-deletes the composition children level by level,
+ * in chunks that are committed separately ("cds.softdelete.cascade.async.chunkSize").
+ */
+@ServiceName(value = OutboxService.PERSISTENT_ORDERED_NAME, type = OutboxService.class)
+public class AsyncCascadeHandler implements EventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncCascadeHandler.class);
+
+    public static final String EVENT_CASCADE = "softdelete.cascade";
+
+    private static final String PARAM_ENTITY = "entity";
+    private static final String PARAM_KEYS = "keys";
+    private static final String FIELD_IS_DELETED = "isDeleted";
+    private static final String FIELD_DELETED_AT = "deletedAt";
+    private static final String FIELD_DELETED_BY = "deletedBy";
+
+    /**
+     * Submits the cascade of a soft-deleted root to the persistent outbox.
+     * Returns false if no persistent outbox is available, so that the caller can cascade synchronously.
+     */
+    public static boolean submit(CdsDeleteEventContext context, EntityMetadata entity, Map<String, Object> keys,
+                                 Map<String, Object> deletionData) {
+        OutboxService outbox = context.getServiceCatalog()
+            .getService(OutboxService.class, OutboxService.PERSISTENT_ORDERED_NAME);
+        if (outbox == null) {
+            logger.warn("Persistent outbox not available, cascading soft delete of {} synchronously",
+                entity.getQualifiedName());
+            return false;
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(PARAM_ENTITY, entity.getQualifiedName());
+        // Values are stored as strings and converted back with the model's key types, see onCascade
+        Map<String, Object> keyParams = new HashMap<>();
+        keys.forEach((name, value) -> keyParams.put(name, value != null ? value.toString() : null));
+        params.put(PARAM_KEYS, keyParams);
+        params.put(FIELD_DELETED_AT, deletionData.get(FIELD_DELETED_AT).toString());
+        params.put(FIELD_DELETED_BY, deletionData.get(FIELD_DELETED_BY));
+
+        OutboxMessage message = OutboxMessage.create();
+        message.setParams(params);
+        outbox.submit(EVENT_CASCADE, message);
+        logger.debug("Submitted asynchronous cascade for {} {}", entity.getQualifiedName(), keys);
+        return true;
+    }
+
+    @On(event = EVENT_CASCADE)
+    @SuppressWarnings("unchecked")
+    public void onCascade(OutboxMessageEventContext context) {
+        Map<String, Object> params = context.getMessage().getParams();
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(context.getModel());
+        EntityMetadata entity = registry.get((String) params.get(PARAM_ENTITY));
+
+        if (entity == null) {
+            logger.warn("Skipping asynchronous cascade for unknown entity '{}'", params.get(PARAM_ENTITY));
+            context.setCompleted();
+            return;
+        }
+
+        Map<String, Object> keys = typedKeys(context.getModel().findEntity(entity.getQualifiedName()).orElse(null),
+            (Map<String, Object>) params.get(PARAM_KEYS));
+        Map<String, Object> deletionData = new HashMap<>();
+        deletionData.put(FIELD_IS_DELETED, true);
+        deletionData.put(FIELD_DELETED_AT, Instant.parse((String) params.get(FIELD_DELETED_AT)));
+        deletionData.put(FIELD_DELETED_BY, params.get(FIELD_DELETED_BY));
+
+        CdsRuntime runtime = context.getCdsRuntime();
+        PersistenceService db = context.getServiceCatalog()
+            .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
+        int chunkSize = SoftDeleteConfig.getAsyncCascadeChunkSize(runtime);
+
+        logger.debug("Running asynchronous cascade for {} {} in chunks of {}", entity.getQualifiedName(), keys, chunkSize);
+        long start = System.nanoTime();
+
+        CascadeDeleteHandler.softDeleteCompositionChildrenInChunks(db, registry, entity, keys, deletionData, chunkSize,
+            ChunkTransactions.ownChangeSet(runtime));
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(entity));
+
+        logger.debug("Finished asynchronous cascade for {} {} in {} ms", entity.getQualifiedName(), keys,
+            (System.nanoTime() - start) / 1_000_000);
+        context.setCompleted();
+    }
+
+    /**
+     * Converts the key values of a cascade job back to the Java types of the entity's key elements,
+     * so that the cascade matches the same rows as a synchronous one (e.g. UUID, Date or Decimal keys).
+     */
+    private static Map<String, Object> typedKeys(CdsEntity cdsEntity, Map<String, Object> keys) {
+        Map<String, Object> typed = new HashMap<>();
+        keys.forEach((name, value) -> {
+            CdsElement element = cdsEntity != null ? cdsEntity.findElement(name).orElse(null) : null;
+            typed.put(name, element != null && element.getType().isSimple() && value != null
+                ? convert(value.toString(), element.getType().<CdsSimpleType>as(CdsSimpleType.class).getJavaType())
+                : value);
+        });
+        return typed;
+    }
+
+    private static Object convert(String value, Class<?> javaType) {
+        if (javaType == Integer.class) {
+            return Integer.valueOf(value);
+        } else if (javaType == Long.class) {
+            return Long.valueOf(value);
+        } else if (javaType == Short.class) {
+            return Short.valueOf(value);
+        } else if (javaType == Double.class) {
+            return Double.valueOf(value);
+        } else if (javaType == BigDecimal.class) {
+            return new BigDecimal(value);
+        } else if (javaType == Boolean.class) {
+            return Boolean.valueOf(value);
+        } else if (javaType == LocalDate.class) {
+            return LocalDate.parse(value);
+        } else if (javaType == LocalTime.class) {
+            return LocalTime.parse(value);
+        } else if (javaType == Instant.class) {
+            return Instant.parse(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.miyasuta;
+
+import com.sap.cds.services.application.ApplicationLifecycleService;
+import com.sap.cds.services.application.ApplicationPreparedEventContext;
+import com.sap.cds.services.handler.EventHandler;
+import com.sap.cds.services.handler.annotations.After;
+import com.sap.cds.services.handler.annotations.ServiceName;
+import com.sap.cds.services.runtime.CdsRuntime;
+import io.github.miyasuta.util.IndexDdlGenerator;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes the soft delete index DDL of the application's model to "cds.softdelete.indexes.file" at startup,
+ * so that it can be reviewed and added to the schema migration. Nothing is executed against the database.
+ */
+@ServiceName(value = ApplicationLifecycleService.DEFAULT_NAME, type = ApplicationLifecycleService.class)
+public class IndexDdlHandler implements EventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexDdlHandler.class);
+
+    @After(event = ApplicationLifecycleService.EVENT_APPLICATION_PREPARED)
+    public void writeIndexDdl(ApplicationPreparedEventContext context) {
+        CdsRuntime runtime = context.getCdsRuntime();
+        String file = SoftDeleteConfig.getIndexesFile(runtime);
+        if (file == null) {
+            return;
+        }
+        IndexDdlGenerator.Dialect dialect = SoftDeleteConfig.getIndexesDialect(runtime);
+        try {
+            Path path = Paths.get(file);
+            IndexDdlGenerator.write(path, IndexDdlGenerator.generate(runtime.getCdsModel(), dialect));
+            logger.info("Wrote soft delete index DDL for {} to {}", dialect, path.toAbsolutePath());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to write soft delete index DDL to {}: {}", file, e.getMessage());
+        }
+    }
+}
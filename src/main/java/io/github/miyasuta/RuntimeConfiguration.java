@@ -3,15 +3,52 @@ package io.github.miyasuta;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sap.cds.services.cds.ApplicationService;
+import com.sap.cds.services.runtime.CdsRuntime;
 import com.sap.cds.services.runtime.CdsRuntimeConfiguration;
 import com.sap.cds.services.runtime.CdsRuntimeConfigurer;
 
+import io.github.miyasuta.util.EntityMetadataRegistry;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import io.github.miyasuta.util.SoftDeleteMetrics;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class RuntimeConfiguration implements CdsRuntimeConfiguration{
     private static final Logger logger = LoggerFactory.getLogger(RuntimeConfiguration.class);
 
+    @Override
+    public void services(CdsRuntimeConfigurer configurer) {
+        configurer.service(new SoftDeleteServiceImpl());
+    }
+
     @Override
     public void eventHandlers(CdsRuntimeConfigurer configurer) {
-        configurer.eventHandler(new SoftDeleteHandler());
-        logger.info("[cds-feature-softdelete] SoftDeleteHandler successfully registered 5:29 ✅");
+        CdsRuntime runtime = configurer.getCdsRuntime();
+        SoftDeleteMetrics.initialize(runtime);
+        List<String> services = registerSoftDeleteHandler(runtime);
+        configurer.eventHandler(new AsyncCascadeHandler());
+        configurer.eventHandler(new SoftDeletePurgeHandler());
+        configurer.eventHandler(new IndexDdlHandler());
+        configurer.eventHandler(new SoftDeleteServiceHandler());
+        logger.info("[cds-feature-softdelete] SoftDeleteHandler registered on services {}", services);
+    }
+
+    /**
+     * Registers the SoftDeleteHandler on the application services that use soft delete according to the
+     * startup model (or on all of them with "cds.softdelete.handlers.allServices"), and returns their names.
+     */
+    private static List<String> registerSoftDeleteHandler(CdsRuntime runtime) {
+        SoftDeleteHandler handler = new SoftDeleteHandler();
+        boolean allServices = SoftDeleteConfig.isHandlersOnAllServices(runtime);
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(runtime.getCdsModel());
+
+        List<ApplicationService> services = runtime.getServiceCatalog().getServices(ApplicationService.class)
+            .filter(service -> allServices || service.getDefinition() != null
+                && SoftDeleteHandler.usesSoftDelete(service.getDefinition(), registry))
+            .collect(Collectors.toList());
+        services.forEach(handler::registerOn);
+        return services.stream().map(ApplicationService::getName).collect(Collectors.toList());
     }
 }
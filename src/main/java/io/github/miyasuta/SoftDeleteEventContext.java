@@ -0,0 +1,29 @@
+package io.github.miyasuta;
+
+import com.sap.cds.services.EventContext;
+import com.sap.cds.services.EventName;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Event context of {@link SoftDeleteService#softDelete(String, Collection)}.
+ */
+@EventName(SoftDeleteService.EVENT_SOFT_DELETE)
+public interface SoftDeleteEventContext extends EventContext {
+
+    static SoftDeleteEventContext create(String entityName) {
+        return EventContext.create(SoftDeleteEventContext.class, entityName);
+    }
+
+    Collection<Map<String, Object>> getKeys();
+
+    void setKeys(Collection<Map<String, Object>> keys);
+
+    /**
+     * Number of soft deleted rows per qualified entity name.
+     */
+    Map<String, Long> getResult();
+
+    void setResult(Map<String, Long> result);
+}
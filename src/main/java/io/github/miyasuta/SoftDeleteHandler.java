@@ -4,18 +4,19 @@ import com.sap.cds.Result;
 import com.sap.cds.ResultBuilder;
 import com.sap.cds.ql.CQL;
 import com.sap.cds.ql.Predicate;
+import com.sap.cds.ql.Select;
+import com.sap.cds.ql.SelectableValue;
 import com.sap.cds.ql.Update;
+import com.sap.cds.ql.cqn.CqnDelete;
+import com.sap.cds.ql.cqn.CqnElementRef;
+import com.sap.cds.ql.cqn.CqnReference;
 import com.sap.cds.ql.cqn.CqnSelect;
 import com.sap.cds.ql.cqn.CqnSelectListItem;
 import com.sap.cds.ql.cqn.CqnUpdate;
-import com.sap.cds.ql.cqn.CqnStructuredTypeRef;
-import com.sap.cds.ql.cqn.CqnElementRef;
 import com.sap.cds.ql.cqn.CqnValue;
 import com.sap.cds.ql.cqn.Modifier;
-import com.sap.cds.ql.RefBuilder;
-import com.sap.cds.ql.StructuredTypeRef;
-import com.sap.cds.reflect.CdsEntity;
 import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.reflect.CdsService;
 import com.sap.cds.ql.cqn.AnalysisResult;
 import com.sap.cds.ql.cqn.CqnAnalyzer;
 import com.sap.cds.services.cds.ApplicationService;
@@ -25,55 +26,84 @@ import com.sap.cds.services.cds.CqnService;
 import com.sap.cds.services.draft.DraftCancelEventContext;
 import com.sap.cds.services.draft.DraftService;
 import com.sap.cds.services.persistence.PersistenceService;
-import com.sap.cds.services.handler.EventHandler;
-import com.sap.cds.services.handler.annotations.Before;
 import com.sap.cds.services.handler.annotations.HandlerOrder;
-import com.sap.cds.services.handler.annotations.On;
-import com.sap.cds.services.handler.annotations.ServiceName;
 import io.github.miyasuta.util.CascadeDeleteHandler;
+import io.github.miyasuta.util.EntityMetadata;
 import io.github.miyasuta.util.EntityMetadataHelper;
+import io.github.miyasuta.util.EntityMetadataRegistry;
 import io.github.miyasuta.util.ExpandFilterBuilder;
+import io.github.miyasuta.util.KeyPredicates;
+import io.github.miyasuta.util.ParentStateCache;
 import io.github.miyasuta.util.QueryAnalyzer;
+import io.github.miyasuta.util.QueryShape;
+import io.github.miyasuta.util.SoftDeleteMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Event handler for soft delete functionality.
- * Intercepts DELETE, DRAFT_CANCEL, and READ operations to implement soft delete behavior.
+ * Intercepts DELETE, DRAFT_CANCEL and READ operations to implement soft delete behavior.
+ * The handler is registered programmatically (see {@link #registerOn(ApplicationService)}), only on the
+ * application services that use soft delete, so that other services do not dispatch to it at all.
  */
-@ServiceName(value = "*", type = {ApplicationService.class, DraftService.class})
-public class SoftDeleteHandler implements EventHandler {
+public class SoftDeleteHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(SoftDeleteHandler.class);
     private static final String FIELD_IS_DELETED = "isDeleted";
+    private static final String FIELD_IS_DELETED_DISPLAY = "isDeletedDisplay";
     private static final String FIELD_DELETED_AT = "deletedAt";
     private static final String FIELD_DELETED_BY = "deletedBy";
 
+    /**
+     * Registers the handler on an application service: DELETE and READ, and for draft-enabled services
+     * also DRAFT_CANCEL, for all entities of the service.
+     */
+    public void registerOn(ApplicationService service) {
+        String[] allEntities = { "*" };
+        service.on(new String[] { CqnService.EVENT_DELETE }, allEntities, HandlerOrder.EARLY,
+            context -> onDelete(context.as(CdsDeleteEventContext.class)));
+        service.before(new String[] { CqnService.EVENT_READ }, allEntities, HandlerOrder.DEFAULT,
+            context -> beforeRead(context.as(CdsReadEventContext.class)));
+        if (service instanceof DraftService) {
+            service.on(new String[] { DraftService.EVENT_DRAFT_CANCEL }, allEntities, HandlerOrder.EARLY,
+                context -> onDraftCancel(context.as(DraftCancelEventContext.class)));
+        }
+    }
+
+    /**
+     * Returns true if the service exposes a soft-delete enabled entity.
+     */
+    public static boolean usesSoftDelete(CdsService service, EntityMetadataRegistry registry) {
+        return service.entities().anyMatch(entity -> registry.isSoftDeleteEnabled(entity.getQualifiedName()));
+    }
+
     /**
      * Intercepts draft cancel (delete) operations for draft-enabled entities.
      * For draft children:
      * - If active entity exists (existing record): soft delete
      * - If active entity does not exist (new record): physical delete
      */
-    @On(event = DraftService.EVENT_DRAFT_CANCEL)
-    @HandlerOrder(HandlerOrder.EARLY)
     public void onDraftCancel(DraftCancelEventContext context) {
         CdsModel model = context.getModel();
-        CdsEntity targetEntity = model.getEntity(context.getTarget().getQualifiedName());
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(model);
+        EntityMetadata targetEntity = registry.get(context.getTarget().getQualifiedName());
 
-        if (!EntityMetadataHelper.isSoftDeleteEnabled(targetEntity)) {
+        if (targetEntity == null || !targetEntity.isSoftDeleteEnabled()) {
             context.proceed();
             return;
         }
 
         // Draft root entities should use physical delete when discarded
-        if (EntityMetadataHelper.isDraftRootEntity(targetEntity)) {
+        if (targetEntity.isDraftRootEntity()) {
             logger.debug("Draft root discard detected for entity: {} - using physical delete",
                 targetEntity.getQualifiedName());
+            SoftDeleteMetrics.get().draftCancelDecision(targetEntity.getQualifiedName(), false);
             context.proceed();
             return;
         }
@@ -88,7 +118,7 @@ public class SoftDeleteHandler implements EventHandler {
         Map<String, Object> keys = targetKeys != null ? new HashMap<>(targetKeys) : new HashMap<>(analysisResult.rootKeys());
 
         // Filter keys to only include those that belong to the entity
-        Map<String, Object> filteredKeys = EntityMetadataHelper.filterKeysForEntity(keys, targetEntity);
+        Map<String, Object> filteredKeys = EntityMetadataHelper.filterKeys(keys, targetEntity.getKeyNames());
 
         if (filteredKeys.isEmpty()) {
             logger.warn("Draft cancel request did not contain entity keys – skipping soft delete.");
@@ -102,12 +132,14 @@ public class SoftDeleteHandler implements EventHandler {
         if (!activeEntityExists) {
             // New draft child (never activated): use physical delete
             logger.debug("Active entity does not exist for draft child - using physical delete");
+            SoftDeleteMetrics.get().draftCancelDecision(targetEntity.getQualifiedName(), false);
             context.proceed();
             return;
         }
 
         // Existing draft child (previously activated): use soft delete
         logger.debug("Active entity exists for draft child - using soft delete");
+        SoftDeleteMetrics.get().draftCancelDecision(targetEntity.getQualifiedName(), true);
 
         // Prepare soft delete data
         Map<String, Object> deletionData = prepareDeletionData(context.getUserInfo().getName());
@@ -118,7 +150,7 @@ public class SoftDeleteHandler implements EventHandler {
             .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
 
         // Get draft table name
-        String draftTableName = targetEntity.getQualifiedName() + "_drafts";
+        String draftTableName = targetEntity.getDraftTableName();
 
         // Build the update query for draft entity
         Map<String, Object> matchKeys = new HashMap<>(filteredKeys);
@@ -129,9 +161,11 @@ public class SoftDeleteHandler implements EventHandler {
             .matching(matchKeys);
 
         db.run(update);
+        SoftDeleteMetrics.get().softDeleted(targetEntity.getQualifiedName(), true);
 
         // Cascade soft delete to composition children in draft mode
-        CascadeDeleteHandler.softDeleteDraftCompositionChildren(context, db, targetEntity, filteredKeys, deletionData);
+        CascadeDeleteHandler.softDeleteDraftCompositionChildren(context, db, registry, targetEntity, filteredKeys, deletionData);
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(targetEntity));
 
         // Mark as completed and return success
         context.setResult(ResultBuilder.deletedRows(1).result());
@@ -142,13 +176,12 @@ public class SoftDeleteHandler implements EventHandler {
      * Intercepts DELETE operations and converts them to UPDATE operations that set soft delete fields.
      * Also cascades soft delete to composition children.
      */
-    @On(event = CqnService.EVENT_DELETE)
-    @HandlerOrder(HandlerOrder.EARLY)
     public void onDelete(CdsDeleteEventContext context) {
         CdsModel model = context.getModel();
-        CdsEntity targetEntity = model.getEntity(context.getTarget().getQualifiedName());
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(model);
+        EntityMetadata targetEntity = registry.get(context.getTarget().getQualifiedName());
 
-        if (!EntityMetadataHelper.isSoftDeleteEnabled(targetEntity)) {
+        if (targetEntity == null || !targetEntity.isSoftDeleteEnabled()) {
             context.proceed();
             return;
         }
@@ -167,8 +200,14 @@ public class SoftDeleteHandler implements EventHandler {
         Map<String, Object> keys = targetKeys != null ? new HashMap<>(targetKeys) : new HashMap<>(analysisResult.rootKeys());
         EntityMetadataHelper.removeDraftKeys(keys);
 
+        // Searched DELETE (e.g. where createdAt < X): keep the WHERE clause instead of matching keys
+        if (!keys.keySet().containsAll(targetEntity.getKeyNames())) {
+            onSearchedDelete(context, registry, targetEntity, deletionData);
+            return;
+        }
+
         // Get the underlying database entity name
-        String dbEntityName = EntityMetadataHelper.getDbEntityName(targetEntity);
+        String dbEntityName = targetEntity.getDbEntityName();
 
         // Convert DELETE to UPDATE
         CqnUpdate update = Update.entity(dbEntityName)
@@ -178,184 +217,215 @@ public class SoftDeleteHandler implements EventHandler {
         // Use PersistenceService to run the update directly on the database
         PersistenceService db = context.getServiceCatalog().getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
         Result result = db.run(update);
+        SoftDeleteMetrics.get().softDeleted(targetEntity.getQualifiedName(), false);
 
-        // Cascade soft delete to composition children
-        CascadeDeleteHandler.softDeleteCompositionChildren(context, targetEntity, keys, deletionData);
+        // Cascade soft delete to composition children, in the background for @softdelete.cascade: 'async'
+        boolean cascadeSubmitted = targetEntity.isAsyncCascade() && !targetEntity.getCompositions().isEmpty()
+            && AsyncCascadeHandler.submit(context, targetEntity, keys, deletionData);
+        if (!cascadeSubmitted) {
+            CascadeDeleteHandler.softDeleteCompositionChildren(context, registry, targetEntity, keys, deletionData);
+        }
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(targetEntity));
 
         // Mark the event as completed and set result with affected row count
         context.setResult(ResultBuilder.deletedRows((int) result.rowCount()).result());
         context.setCompleted();
     }
 
+    /**
+     * Converts a DELETE without (complete) keys into one UPDATE with the original WHERE clause and isDeleted = false.
+     * The cascade runs first, with the parents selected by a subquery on the same ref and WHERE clause, so that
+     * the matching parents are never loaded into memory. Searched deletes always cascade set-based and synchronously.
+     */
+    private void onSearchedDelete(CdsDeleteEventContext context, EntityMetadataRegistry registry,
+                                  EntityMetadata targetEntity, Map<String, Object> deletionData) {
+        CqnDelete delete = context.getCqn();
+        Predicate notDeleted = CQL.get(FIELD_IS_DELETED).eq(false);
+        Predicate where = delete.where().map(predicate -> CQL.and(predicate, notDeleted)).orElse(notDeleted);
+        PersistenceService db = context.getServiceCatalog().getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
+
+        logger.debug("Searched soft delete on {} where {}", targetEntity.getQualifiedName(), where);
+
+        if (!targetEntity.getCompositions().isEmpty() && !targetEntity.getKeyNames().isEmpty()) {
+            CqnSelect parentKeySelect = Select.from(delete.ref())
+                .columns(targetEntity.getKeyNames().stream().map(CQL::get).collect(Collectors.toList()))
+                .where(where);
+            CascadeDeleteHandler.softDeleteCompositionChildren(db, registry, targetEntity,
+                foreignKeyNames -> KeyPredicates.in(foreignKeyNames, parentKeySelect), deletionData, 0, Supplier::get,
+                new HashMap<>());
+        }
+
+        Result result = db.run(Update.entity(delete.ref()).data(deletionData).where(where));
+        SoftDeleteMetrics.get().softDeleted(targetEntity.getQualifiedName(), false);
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(targetEntity));
+
+        context.setResult(ResultBuilder.deletedRows((int) result.rowCount()).result());
+        context.setCompleted();
+    }
+
     /**
      * Automatically adds isDeleted = false filter to READ operations on soft-delete enabled entities.
      * Skips filtering for draft tables and draft record queries.
+     * All rewrites (isDeletedDisplay rename, main filter, expand filters) are applied in a single
+     * CQN copy; if none of them applies, the original statement is left untouched.
      */
-    @Before(event = CqnService.EVENT_READ)
     public void beforeRead(CdsReadEventContext context) {
+        long start = System.nanoTime();
+        boolean applied = rewriteRead(context);
+        SoftDeleteMetrics.get().readRewrite(context.getTarget().getQualifiedName(), applied, System.nanoTime() - start);
+    }
+
+    /**
+     * Applies the soft delete rewrites to a READ statement. Returns false if the statement was left untouched.
+     */
+    private boolean rewriteRead(CdsReadEventContext context) {
         CqnSelect select = context.getCqn();
 
         // Get target entity using qualified name
         CdsModel model = context.getModel();
         String targetName = context.getTarget().getQualifiedName();
-        CdsEntity entity = model.getEntity(targetName);
-
-        // ISSUE-009: Rewrite isDeletedDisplay references to isDeleted BEFORE early returns
-        // This needs to happen for: WHERE clause, rootSegment filter, targetSegment filter
-        // Navigation path queries have $filter in targetSegment, not WHERE
-        select = rewriteIsDeletedDisplayInSelect(select);
-        context.setCqn(select);
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(model);
+        EntityMetadata entity = registry.get(targetName);
 
         // Skip filtering for draft table (CAP draft activation needs to read soft-deleted draft records)
-        if (targetName.endsWith("_drafts")) {
-            return;
-        }
+        // and for reads from subqueries (no entity ref to classify)
+        boolean applySoftDelete = !targetName.endsWith("_drafts") && entity != null && entity.isSoftDeleteEnabled()
+            && select.from().isRef();
 
-        if (entity == null || !EntityMetadataHelper.isSoftDeleteEnabled(entity)) {
-            return;
-        }
+        // Analyze query characteristics (single pass), only for reads that are filtered below
+        QueryShape shape = applySoftDelete ? QueryAnalyzer.classify(select) : null;
+
+        // ISSUE-009: Rewrite isDeletedDisplay references to isDeleted, also for entities that are not filtered below
+        boolean rewriteDisplayField = shape != null ? shape.isDisplayFieldInWhere()
+            : select.where().map(where -> QueryAnalyzer.referencesElement(where, FIELD_IS_DELETED_DISPLAY)).orElse(false);
 
-        logger.debug("Applying soft delete filter for entity: {}", targetName);
-
-        // Analyze query characteristics
-        boolean isByKeyAccess = QueryAnalyzer.isByKeyAccess(select);
-        boolean isNavigationPath = QueryAnalyzer.isNavigationPath(select);
-
-        // ISSUE-010 & ISSUE-011: Draft by-key access special handling
-        // Draft activation needs to read soft-deleted records for by-key access (e.g., Orders(ID=...,IsActiveEntity=false))
-        // - Skip main entity filtering (to allow reading soft-deleted draft for activation)
-        // - But still apply expand filtering (to exclude soft-deleted children from $expand, per R1 rule)
-        boolean isDraft = entity != null && EntityMetadataHelper.isDraftEntity(entity);
-        boolean isQueryingDrafts = isDraft && QueryAnalyzer.isQueryingDraftRecords(select);
-        boolean isDraftByKeyAccess = isQueryingDrafts && isByKeyAccess;
-
-        // Check if user already specified isDeleted filter
-        Boolean userIsDeletedValue = QueryAnalyzer.getIsDeletedValueFromWhere(select);
-        boolean userSpecifiedIsDeleted = userIsDeletedValue != null;
-
-        // Determine the isDeleted value to use for main entity and expand filters
-        Boolean mainIsDeletedValue;
-        Boolean expandIsDeletedValue;
-
-        if (isByKeyAccess) {
-            // By-key access: query parent's isDeleted value for expand filtering
-            expandIsDeletedValue = ExpandFilterBuilder.getParentIsDeletedValue(context, select, entity);
-            mainIsDeletedValue = null; // Don't filter main entity for by-key access
-        } else if (userSpecifiedIsDeleted) {
-            // User specified isDeleted filter - prioritize user's explicit filter
-            expandIsDeletedValue = userIsDeletedValue;
-            mainIsDeletedValue = null; // User already specified filter
-        } else if (isNavigationPath) {
-            // Navigation path: query parent's isDeleted value and apply to main entity
-            mainIsDeletedValue = ExpandFilterBuilder.getParentIsDeletedValueFromNavigation(context, select, model);
-            expandIsDeletedValue = mainIsDeletedValue;
-        } else {
-            // Default: filter for non-deleted entities
-            expandIsDeletedValue = false;
-            mainIsDeletedValue = false;
+        if (!rewriteDisplayField && !applySoftDelete) {
+            return false;
         }
 
-        // Determine if we should apply main entity filter
-        // ISSUE-011: For draft by-key access, skip main entity filter but still apply expand filter below
-        boolean applyMainFilter = !isByKeyAccess && !userSpecifiedIsDeleted && mainIsDeletedValue != null;
+        Predicate isDeletedFilter = null;
+        Predicate expandIsDeletedFilter = null;
+        boolean rewriteExpands = applySoftDelete && shape.hasExpands();
+
+        if (applySoftDelete) {
+            logger.debug("Applying soft delete filter for entity: {}", targetName);
+
+            boolean isByKeyAccess = shape.isByKeyAccess();
+            boolean isNavigationPath = shape.isNavigationPath();
+
+            // ISSUE-010 & ISSUE-011: Draft by-key access special handling
+            // Draft activation needs to read soft-deleted records for by-key access (e.g., Orders(ID=...,IsActiveEntity=false))
+            // - Skip main entity filtering (to allow reading soft-deleted draft for activation)
+            // - But still apply expand filtering (to exclude soft-deleted children from $expand, per R1 rule)
+            boolean isDraft = entity.isDraftEntity();
+            boolean isQueryingDrafts = isDraft && shape.isQueryingDraftRecords();
+            boolean isDraftByKeyAccess = isQueryingDrafts && isByKeyAccess;
+
+            // Check if user already specified isDeleted filter
+            Boolean userIsDeletedValue = shape.getUserIsDeletedValue();
+            boolean userSpecifiedIsDeleted = userIsDeletedValue != null;
+
+            // Determine the isDeleted filters for main entity and expands
+            // (the parent's state is either queried up front or resolved inline, see cds.softdelete.read.parentState)
+            if (isByKeyAccess) {
+                // By-key access: match parent's isDeleted value for expand filtering (only needed with $expand)
+                expandIsDeletedFilter = rewriteExpands
+                    ? ExpandFilterBuilder.getParentIsDeletedFilter(context, select, entity) : null;
+                // Don't filter main entity for by-key access
+            } else if (userSpecifiedIsDeleted) {
+                // User specified isDeleted filter - prioritize user's explicit filter
+                expandIsDeletedFilter = ExpandFilterBuilder.isDeletedEquals(userIsDeletedValue);
+                // User already specified filter for main entity, only hide children of pending async cascades
+                if (!userIsDeletedValue) {
+                    isDeletedFilter = ExpandFilterBuilder.asyncCascadeGuardFilter(registry, entity, null);
+                }
+            } else if (isNavigationPath) {
+                // Navigation path: match parent's isDeleted value for main entity and expands
+                expandIsDeletedFilter = ExpandFilterBuilder.getParentIsDeletedFilterFromNavigation(context, select, registry);
+                isDeletedFilter = ExpandFilterBuilder.pendingCascadeGuardFilter(registry, entity, expandIsDeletedFilter);
+            } else {
+                // Default: filter for non-deleted entities
+                expandIsDeletedFilter = CQL.get(FIELD_IS_DELETED).eq(false);
+                isDeletedFilter = ExpandFilterBuilder.asyncCascadeGuardFilter(registry, entity, expandIsDeletedFilter);
+            }
 
-        // Log filtering decisions for debugging
-        if (isDraftByKeyAccess) {
-            logger.debug("Draft by-key access: skip main filter, apply expand filter with isDeleted={}", expandIsDeletedValue);
+            // Log filtering decisions for debugging
+            // ISSUE-011: For draft by-key access, skip main entity filter but still apply expand filter below
+            if (isDraftByKeyAccess) {
+                logger.debug("Draft by-key access: skip main filter, apply expand filter {}", expandIsDeletedFilter);
+            }
         }
 
-        // Build isDeleted filter for main entity
-        final Boolean finalMainIsDeletedValue = mainIsDeletedValue;
-        Predicate isDeletedFilter = finalMainIsDeletedValue != null ?
-            CQL.get(FIELD_IS_DELETED).eq(finalMainIsDeletedValue) : null;
+        if (!rewriteDisplayField && isDeletedFilter == null && !rewriteExpands) {
+            return false;
+        }
 
         // Final values for use in Modifier
-        final Boolean finalExpandIsDeletedValue = expandIsDeletedValue;
+        final Predicate finalIsDeletedFilter = isDeletedFilter;
+        final Predicate finalExpandIsDeletedFilter = expandIsDeletedFilter;
+
+        // isDeletedDisplay refs replaced by isDeleted, so that selected isDeletedDisplay columns can be restored
+        Map<CqnValue, CqnElementRef> rewrittenDisplayRefs = rewriteDisplayField
+            ? new IdentityHashMap<>() : Collections.emptyMap();
 
-        // Apply filters using CQL.copy with Modifier
+        // Apply all rewrites using a single CQL.copy with Modifier
         CqnSelect modifiedSelect = CQL.copy(select, new Modifier() {
             @Override
-            public Predicate where(Predicate where) {
-                // isDeletedDisplay has already been rewritten to isDeleted at the beginning of beforeRead
-
-                if (!applyMainFilter || isDeletedFilter == null) {
-                    return where;
-                }
-                if (where != null) {
-                    return CQL.and(where, isDeletedFilter);
+            public CqnValue ref(CqnElementRef ref) {
+                if (rewriteDisplayField && FIELD_IS_DELETED_DISPLAY.equals(ref.lastSegment())) {
+                    // Only the last segment is replaced, so that a path (e.g. order.isDeletedDisplay) keeps its target
+                    List<CqnReference.Segment> segments = new ArrayList<>(ref.segments());
+                    segments.set(segments.size() - 1, CQL.refSegment(FIELD_IS_DELETED));
+                    CqnValue isDeleted = CQL.get(segments);
+                    rewrittenDisplayRefs.put(isDeleted, ref);
+                    logger.debug("Rewrote {} to {}", ref, isDeleted);
+                    return isDeleted;
                 }
-                return isDeletedFilter;
+                return ref;
             }
 
             @Override
-            public List<CqnSelectListItem> items(List<CqnSelectListItem> items) {
-                return items.stream()
-                    .map(item -> ExpandFilterBuilder.addFilterToExpandItem(item, model, entity, finalExpandIsDeletedValue))
-                    .collect(Collectors.toList());
+            public CqnSelectListItem selectListValue(SelectableValue value, String alias) {
+                // Only filters are rewritten: selected isDeletedDisplay columns stay as they are
+                CqnElementRef original = rewrittenDisplayRefs.get(value);
+                if (original != null) {
+                    return Modifier.super.selectListValue(CQL.get(original.segments()), alias);
+                }
+                return Modifier.super.selectListValue(value, alias);
             }
-        });
 
-        context.setCqn(modifiedSelect);
-    }
-
-    /**
-     * Rewrites isDeletedDisplay references in a CqnSelect.
-     * Handles WHERE clause and ref segment filters (for navigation paths).
-     * ISSUE-009: Support isDeletedDisplay filter conditions
-     */
-    private CqnSelect rewriteIsDeletedDisplayInSelect(CqnSelect select) {
-        // Use CQL.copy with Modifier to rewrite isDeletedDisplay references in WHERE clause
-        // The $filter parameter from navigation paths is converted to WHERE clause by CAP runtime
-        return CQL.copy(select, new Modifier() {
             @Override
             public Predicate where(Predicate where) {
-                Predicate rewritten = rewriteIsDeletedDisplayReferences(where);
-                if (rewritten != where) {
-                    logger.debug("Rewrote isDeletedDisplay filter to isDeleted in WHERE clause");
+                if (finalIsDeletedFilter == null) {
+                    return where;
                 }
-                return rewritten;
-            }
-        });
-    }
-
-    /**
-     * Rewrites isDeletedDisplay references in predicates to isDeleted.
-     * This allows users to filter by isDeletedDisplay while the plugin uses the internal isDeleted field.
-     * ISSUE-009: Support isDeletedDisplay filter conditions
-     */
-    private Predicate rewriteIsDeletedDisplayReferences(Predicate predicate) {
-        if (predicate == null) {
-            return null;
-        }
-
-        return CQL.copy(predicate, new Modifier() {
-            @Override
-            public CqnStructuredTypeRef ref(CqnStructuredTypeRef ref) {
-                String lastSegment = ref.lastSegment();
-                if ("isDeletedDisplay".equals(lastSegment)) {
-                    // Replace isDeletedDisplay with isDeleted
-                    return (CqnStructuredTypeRef) CQL.get(FIELD_IS_DELETED);
+                if (where != null) {
+                    return CQL.and(where, finalIsDeletedFilter);
                 }
-                return ref;
+                return finalIsDeletedFilter;
             }
 
             @Override
-            public CqnValue ref(CqnElementRef ref) {
-                String lastSegment = ref.lastSegment();
-                if ("isDeletedDisplay".equals(lastSegment)) {
-                    // Replace isDeletedDisplay with isDeleted
-                    return CQL.get(FIELD_IS_DELETED);
+            public List<CqnSelectListItem> items(List<CqnSelectListItem> items) {
+                if (!rewriteExpands) {
+                    return items;
                 }
-                return ref;
+                return items.stream()
+                    .map(item -> ExpandFilterBuilder.addFilterToExpandItem(item, registry, entity, finalExpandIsDeletedFilter))
+                    .collect(Collectors.toList());
             }
         });
+
+        context.setCqn(modifiedSelect);
+        return true;
     }
 
     /**
      * Prepares deletion metadata with current timestamp and user.
      */
-    private Map<String, Object> prepareDeletionData(String userName) {
-        Instant now = Instant.now();
+    static Map<String, Object> prepareDeletionData(String userName) {
+        // Millisecond precision survives every database, so that deletedAt can be matched exactly again
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
         if (userName == null || userName.isEmpty()) {
             userName = "system";
         }
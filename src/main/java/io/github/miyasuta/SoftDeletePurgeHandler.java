@@ -0,0 +1,136 @@
+package io.github.miyasuta;
+
+import com.sap.cds.services.application.ApplicationLifecycleService;
+import com.sap.cds.services.application.ApplicationPreparedEventContext;
+import com.sap.cds.services.application.ApplicationStoppedEventContext;
+import com.sap.cds.services.handler.EventHandler;
+import com.sap.cds.services.handler.annotations.After;
+import com.sap.cds.services.handler.annotations.Before;
+import com.sap.cds.services.handler.annotations.ServiceName;
+import com.sap.cds.services.mt.TenantProviderService;
+import com.sap.cds.services.persistence.PersistenceService;
+import com.sap.cds.services.request.RequestContext;
+import com.sap.cds.services.runtime.CdsRuntime;
+import com.sap.cds.services.runtime.RequestContextRunner;
+import io.github.miyasuta.util.ChunkTransactions;
+import io.github.miyasuta.util.EntityMetadataRegistry;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import io.github.miyasuta.util.SoftDeletePurger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Schedules the physical purge of soft-deleted rows whose retention (@softdelete.retention) has expired.
+ * The purge runs every "cds.softdelete.purge.interval" on a background thread, as system user of each
+ * subscribed tenant, with one transaction per chunk ("cds.softdelete.purge.chunkSize") and an optional rate limit
+ * ("cds.softdelete.purge.maxRowsPerSecond").
+ */
+@ServiceName(value = ApplicationLifecycleService.DEFAULT_NAME, type = ApplicationLifecycleService.class)
+public class SoftDeletePurgeHandler implements EventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftDeletePurgeHandler.class);
+
+    private ScheduledExecutorService scheduler;
+
+    @After(event = ApplicationLifecycleService.EVENT_APPLICATION_PREPARED)
+    public synchronized void schedulePurge(ApplicationPreparedEventContext context) {
+        CdsRuntime runtime = context.getCdsRuntime();
+        Duration interval = SoftDeleteConfig.getPurgeInterval(runtime);
+        if (interval == null) {
+            logger.debug("Purge of soft-deleted rows is not scheduled ({} not set)", SoftDeleteConfig.PROPERTY_PURGE_INTERVAL);
+            return;
+        }
+        boolean hasRetention = EntityMetadataRegistry.forModel(runtime.getCdsModel()).entities().stream()
+            .anyMatch(entity -> entity.isSoftDeleteEnabled() && entity.getRetention() != null);
+        if (!hasRetention) {
+            logger.debug("Purge of soft-deleted rows is not scheduled (no entity with @softdelete.retention)");
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "softdelete-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> purge(runtime), interval.toMillis(), interval.toMillis(),
+            TimeUnit.MILLISECONDS);
+        logger.info("Scheduled purge of expired soft-deleted rows every {}", interval);
+    }
+
+    @Before(event = ApplicationLifecycleService.EVENT_APPLICATION_STOPPED)
+    public synchronized void stopPurge(ApplicationStoppedEventContext context) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Physically deletes all expired soft-deleted rows and returns the number of deleted rows.
+     * With multitenancy, every subscribed tenant is purged in turn, as system user of that tenant.
+     * Can also be called directly, e.g. from a custom job or action.
+     */
+    public static long purge(CdsRuntime runtime) {
+        long start = System.nanoTime();
+        List<String> tenants = readTenants(runtime);
+        long rows = 0;
+        if (tenants.isEmpty()) {
+            rows = purge(runtime, runtime.requestContext().systemUser(), null);
+        } else {
+            for (String tenant : tenants) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                rows += purge(runtime, runtime.requestContext().systemUser(tenant), tenant);
+            }
+        }
+        logger.debug("Purged {} expired soft-deleted rows of {} tenants in {} ms", rows, tenants.size(),
+            (System.nanoTime() - start) / 1_000_000);
+        return rows;
+    }
+
+    private static long purge(CdsRuntime runtime, RequestContextRunner runner, String tenant) {
+        try {
+            return runner.run((Function<RequestContext, Long>) requestContext -> {
+                PersistenceService db = requestContext.getServiceCatalog()
+                    .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
+                EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(requestContext.getModel());
+                return SoftDeletePurger.purge(db, registry, Instant.now(),
+                    SoftDeleteConfig.getPurgeChunkSize(runtime), SoftDeleteConfig.getPurgeMaxRowsPerSecond(runtime),
+                    ChunkTransactions.ownChangeSet(runtime));
+            });
+        } catch (Exception e) {
+            logger.warn("Failed to purge expired soft-deleted rows{}: {}", tenant != null ? " of tenant " + tenant : "",
+                e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the subscribed tenants, or an empty list if the application is not multitenant.
+     */
+    private static List<String> readTenants(CdsRuntime runtime) {
+        TenantProviderService tenantProvider = runtime.getServiceCatalog()
+            .getService(TenantProviderService.class, TenantProviderService.DEFAULT_NAME);
+        if (tenantProvider == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> tenants = runtime.requestContext().systemUserProvider()
+                .run((Function<RequestContext, List<String>>) requestContext -> tenantProvider.readTenants());
+            return tenants != null ? tenants : Collections.emptyList();
+        } catch (Exception e) {
+            logger.warn("Failed to read the subscribed tenants, purging without tenant: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.miyasuta;
+
+import com.sap.cds.services.Service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Programmatic soft delete and restore of many entity instances by key, e.g. for batch jobs.
+ * Available from the service catalog:
+ * <pre>
+ * SoftDeleteService service = runtime.getServiceCatalog()
+ *     .getService(SoftDeleteService.class, SoftDeleteService.DEFAULT_NAME);
+ * Map&lt;String, Long&gt; rows = service.softDelete("OrderService.Orders", keys);
+ * </pre>
+ * Keys are processed in chunks ("cds.softdelete.bulk.chunkSize") with set-based statements, and the
+ * operations cascade through compositions. Every chunk runs in a change set of its own, also if the caller has
+ * an active change set, so that a failing chunk does not roll back the chunks committed before it.
+ */
+public interface SoftDeleteService extends Service {
+
+    String DEFAULT_NAME = "SoftDeleteService$Default";
+
+    String EVENT_SOFT_DELETE = "softDelete";
+    String EVENT_RESTORE = "restore";
+
+    /**
+     * Soft deletes the instances of the entity with the given keys and their composition children.
+     * Instances that are already soft deleted keep their deletion and are not cascaded again.
+     * Returns the number of soft deleted rows per qualified entity name.
+     */
+    Map<String, Long> softDelete(String entityName, Collection<Map<String, Object>> keys);
+
+    /**
+     * Restores the soft deleted instances of the entity with the given keys, together with the composition
+     * children that were soft deleted at the same time. Returns the number of restored rows per qualified entity name.
+     * If a chunk fails, it is rolled back and a ServiceException reports the rows restored by the previous chunks.
+     */
+    Map<String, Long> restore(String entityName, Collection<Map<String, Object>> keys);
+}
@@ -0,0 +1,189 @@
+package io.github.miyasuta;
+
+import com.sap.cds.Result;
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Update;
+import com.sap.cds.services.ErrorStatuses;
+import com.sap.cds.services.EventContext;
+import com.sap.cds.services.ServiceException;
+import com.sap.cds.services.handler.EventHandler;
+import com.sap.cds.services.handler.annotations.On;
+import com.sap.cds.services.handler.annotations.ServiceName;
+import com.sap.cds.services.persistence.PersistenceService;
+import io.github.miyasuta.util.CascadeDeleteHandler;
+import io.github.miyasuta.util.ChunkTransactions;
+import io.github.miyasuta.util.EntityMetadata;
+import io.github.miyasuta.util.EntityMetadataHelper;
+import io.github.miyasuta.util.EntityMetadataRegistry;
+import io.github.miyasuta.util.KeyPredicates;
+import io.github.miyasuta.util.ParentStateCache;
+import io.github.miyasuta.util.SoftDeleteConfig;
+import io.github.miyasuta.util.SoftDeleteMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Handles the events of {@link SoftDeleteService}: set-based soft delete and restore of many keys,
+ * chunk by chunk, including the composition children.
+ */
+@ServiceName(value = SoftDeleteService.DEFAULT_NAME, type = SoftDeleteService.class)
+public class SoftDeleteServiceHandler implements EventHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftDeleteServiceHandler.class);
+    private static final String FIELD_IS_DELETED = "isDeleted";
+    private static final String FIELD_DELETED_AT = "deletedAt";
+    private static final String FIELD_DELETED_BY = "deletedBy";
+
+    @On(event = SoftDeleteService.EVENT_SOFT_DELETE)
+    public void onSoftDelete(SoftDeleteEventContext context) {
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(context.getModel());
+        EntityMetadata entity = getSoftDeleteEntity(context, registry);
+        PersistenceService db = getPersistenceService(context);
+        Map<String, Object> deletionData = SoftDeleteHandler.prepareDeletionData(context.getUserInfo().getName());
+        Map<String, Long> rowCounts = new LinkedHashMap<>();
+        rowCounts.put(entity.getQualifiedName(), 0L);
+
+        List<String> keyNames = entity.getKeyNames();
+        for (List<Map<String, Object>> chunk : chunks(entity, context.getKeys(), getChunkSize(context))) {
+            ChunkTransactions.run(context.getCdsRuntime(), () -> {
+                // Already deleted keys keep their deletedAt, so that restoring them still finds their children
+                List<Map<String, Object>> activeKeys = new ArrayList<>();
+                db.run(KeyPredicates.keySelect(entity.getDbEntityName(), keyNames,
+                        CQL.and(KeyPredicates.in(keyNames, keyNames, chunk), CQL.get(FIELD_IS_DELETED).eq(false))))
+                    .forEach(row -> activeKeys.add(KeyPredicates.keys(row, keyNames)));
+                if (activeKeys.isEmpty()) {
+                    return 0L;
+                }
+
+                long rows = db.run(Update.entity(entity.getDbEntityName())
+                    .data(deletionData)
+                    .where(CQL.and(KeyPredicates.in(keyNames, keyNames, activeKeys),
+                        CQL.get(FIELD_IS_DELETED).eq(false))))
+                    .rowCount();
+                rowCounts.merge(entity.getQualifiedName(), rows, Long::sum);
+
+                CascadeDeleteHandler.softDeleteCompositionChildren(db, registry, entity,
+                    foreignKeyNames -> KeyPredicates.in(foreignKeyNames, keyNames, activeKeys), deletionData,
+                    0, Supplier::get, rowCounts);
+                return rows;
+            });
+        }
+
+        // One per soft deleted key, like a DELETE per key would record it
+        SoftDeleteMetrics.get().softDeleted(entity.getQualifiedName(), false,
+            rowCounts.get(entity.getQualifiedName()));
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(entity));
+        logger.debug("Soft deleted {} keys of {}: {}", context.getKeys().size(), entity.getQualifiedName(), rowCounts);
+        context.setResult(rowCounts);
+        context.setCompleted();
+    }
+
+    @On(event = SoftDeleteService.EVENT_RESTORE)
+    public void onRestore(RestoreEventContext context) {
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(context.getModel());
+        EntityMetadata entity = getSoftDeleteEntity(context, registry);
+        PersistenceService db = getPersistenceService(context);
+        Map<String, Long> rowCounts = new LinkedHashMap<>();
+        rowCounts.put(entity.getQualifiedName(), 0L);
+
+        Map<String, Object> restoreData = new HashMap<>();
+        restoreData.put(FIELD_IS_DELETED, false);
+        restoreData.put(FIELD_DELETED_AT, null);
+        restoreData.put(FIELD_DELETED_BY, null);
+        List<String> keyNames = entity.getKeyNames();
+
+        for (List<Map<String, Object>> chunk : chunks(entity, context.getKeys(), getChunkSize(context))) {
+            // Counted per chunk and added only once the chunk is committed
+            Map<String, Long> chunkRowCounts = new LinkedHashMap<>();
+            try {
+                ChunkTransactions.run(context.getCdsRuntime(), () -> {
+                    // Children are restored if they were deleted together with their parent, i.e. at the same deletedAt
+                    List<String> columns = new ArrayList<>(keyNames);
+                    columns.add(FIELD_DELETED_AT);
+                    Result deleted = db.run(KeyPredicates.keySelect(entity.getDbEntityName(), columns,
+                        CQL.and(KeyPredicates.in(keyNames, keyNames, chunk), CQL.get(FIELD_IS_DELETED).eq(true))));
+                    Map<Object, List<Map<String, Object>>> keysByDeletedAt = new LinkedHashMap<>();
+                    deleted.forEach(row -> keysByDeletedAt
+                        .computeIfAbsent(row.get(FIELD_DELETED_AT), deletedAt -> new ArrayList<>())
+                        .add(KeyPredicates.keys(row, keyNames)));
+
+                    long rows = 0;
+                    for (Map.Entry<Object, List<Map<String, Object>>> group : keysByDeletedAt.entrySet()) {
+                        List<Map<String, Object>> parentKeys = group.getValue();
+                        if (group.getKey() != null) {
+                            CascadeDeleteHandler.restoreCompositionChildren(db, registry, entity,
+                                foreignKeyNames -> KeyPredicates.in(foreignKeyNames, keyNames, parentKeys),
+                                group.getKey(), chunkRowCounts);
+                        }
+                        rows += db.run(Update.entity(entity.getDbEntityName())
+                            .data(restoreData)
+                            .where(CQL.and(KeyPredicates.in(keyNames, keyNames, parentKeys),
+                                CQL.get(FIELD_IS_DELETED).eq(true))))
+                            .rowCount();
+                    }
+                    chunkRowCounts.merge(entity.getQualifiedName(), rows, Long::sum);
+                    return rows;
+                });
+            } catch (RuntimeException e) {
+                ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(entity));
+                throw new ServiceException(ErrorStatuses.SERVER_ERROR,
+                    "Restore of {} failed, the previous chunks restored {}", entity.getQualifiedName(), rowCounts, e);
+            }
+            chunkRowCounts.forEach((name, rows) -> rowCounts.merge(name, rows, Long::sum));
+        }
+
+        ParentStateCache.invalidate(context, registry.getCompositionTreeDbEntityNames(entity));
+        logger.debug("Restored {} keys of {}: {}", context.getKeys().size(), entity.getQualifiedName(), rowCounts);
+        context.setResult(rowCounts);
+        context.setCompleted();
+    }
+
+    private static EntityMetadata getSoftDeleteEntity(EventContext context, EntityMetadataRegistry registry) {
+        EntityMetadata entity = registry.get(context.getTarget());
+        if (entity == null || !entity.isSoftDeleteEnabled() || entity.getKeyNames().isEmpty()) {
+            throw new ServiceException(ErrorStatuses.BAD_REQUEST, "Entity {} is not soft-delete enabled",
+                context.getTarget() != null ? context.getTarget().getQualifiedName() : null);
+        }
+        return entity;
+    }
+
+    private static PersistenceService getPersistenceService(EventContext context) {
+        return context.getServiceCatalog().getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
+    }
+
+    private static int getChunkSize(EventContext context) {
+        return SoftDeleteConfig.getBulkChunkSize(context.getCdsRuntime());
+    }
+
+    /**
+     * Splits the keys into chunks, reduced to the entity's keys without draft keys.
+     */
+    private static List<List<Map<String, Object>>> chunks(EntityMetadata entity, Collection<Map<String, Object>> keys,
+                                                         int chunkSize) {
+        if (keys == null || keys.stream().anyMatch(Objects::isNull)) {
+            throw new ServiceException(ErrorStatuses.BAD_REQUEST, "Keys of {} must not be null",
+                entity.getQualifiedName());
+        }
+        List<List<Map<String, Object>>> chunks = new ArrayList<>();
+        List<Map<String, Object>> chunk = new ArrayList<>();
+        for (Map<String, Object> key : keys) {
+            Map<String, Object> entityKey = EntityMetadataHelper.filterKeys(key, entity.getKeyNames());
+            if (entityKey.size() != entity.getKeyNames().size()) {
+                logger.warn("Skipping incomplete key {} of {}", key, entity.getQualifiedName());
+                continue;
+            }
+            chunk.add(entityKey);
+            if (chunk.size() == chunkSize) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.miyasuta;
+
+import com.sap.cds.services.ServiceDelegator;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Default {@link SoftDeleteService}. The events are handled by {@link SoftDeleteServiceHandler}.
+ */
+public class SoftDeleteServiceImpl extends ServiceDelegator implements SoftDeleteService {
+
+    public SoftDeleteServiceImpl() {
+        super(DEFAULT_NAME);
+    }
+
+    @Override
+    public Map<String, Long> softDelete(String entityName, Collection<Map<String, Object>> keys) {
+        SoftDeleteEventContext context = SoftDeleteEventContext.create(entityName);
+        context.setKeys(keys);
+        emit(context);
+        return context.getResult();
+    }
+
+    @Override
+    public Map<String, Long> restore(String entityName, Collection<Map<String, Object>> keys) {
+        RestoreEventContext context = RestoreEventContext.create(entityName);
+        context.setKeys(keys);
+        emit(context);
+        return context.getResult();
+    }
+}
@@ -0,0 +1,126 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.Result;
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Predicate;
+import com.sap.cds.ql.Select;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.services.changeset.ChangeSetContext;
+import com.sap.cds.services.draft.Drafts;
+import com.sap.cds.services.persistence.PersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Determines whether draft rows have an active counterpart, for the soft vs. physical delete decision of
+ * draft cancel. A lone discard is answered with a point lookup. Once a change set (e.g. an OData $batch
+ * changeset discarding many draft children) probes an entity a second time, the draft rows of the same draft
+ * document are answered at once, up to {@value #PREFETCH_LIMIT} rows, with one query on the draft table and
+ * one IN query on the active table; later probes in the change set are served from that cache.
+ * Rows unknown to the cache are probed individually.
+ */
+public class ActiveEntityProbe {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveEntityProbe.class);
+
+    /**
+     * Maximum number of draft rows answered by one prefetch.
+     */
+    static final int PREFETCH_LIMIT = 1000;
+
+    private static final Map<ChangeSetContext, Probes> changeSetScoped =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Answers and probed entities of one change set.
+     */
+    private static final class Probes {
+        private final Map<String, Boolean> answers = new HashMap<>();
+        private final Set<String> probedEntities = new HashSet<>();
+        private final Set<String> prefetchedEntities = new HashSet<>();
+    }
+
+    /**
+     * Returns true if the active entity with the given keys exists.
+     */
+    public static boolean exists(PersistenceService db, EntityMetadata entity, Map<String, Object> keys) {
+        List<String> keyNames = entity.getKeyNames();
+        String dbEntityName = entity.getDbEntityName();
+        String cacheKey = cacheKey(dbEntityName, keys, keyNames);
+
+        Probes probes = changeSetProbes();
+        if (probes != null) {
+            synchronized (probes) {
+                Boolean exists = probes.answers.get(cacheKey);
+                if (exists == null && entity.isDraftEntity() && !probes.probedEntities.add(dbEntityName)
+                    && probes.prefetchedEntities.add(dbEntityName)) {
+                    prefetchDraftDocument(db, entity, keys, probes.answers);
+                    exists = probes.answers.get(cacheKey);
+                }
+                if (exists != null) {
+                    logger.debug("Active entity probe answered from change set cache for {}", cacheKey);
+                    return exists;
+                }
+            }
+        }
+
+        boolean exists = db.run(Select.copy(KeyPredicates.keySelect(dbEntityName, keyNames,
+            KeyPredicates.matching(keyNames, keyNames, keys))).limit(1)).rowCount() > 0;
+        if (probes != null) {
+            synchronized (probes) {
+                probes.answers.put(cacheKey, exists);
+            }
+        }
+        return exists;
+    }
+
+    /**
+     * Caches the answers for up to {@value #PREFETCH_LIMIT} draft rows of the entity in the draft document of
+     * the given row: the document's draft keys, and which of them exist in the active table.
+     */
+    private static void prefetchDraftDocument(PersistenceService db, EntityMetadata entity, Map<String, Object> keys,
+                                              Map<String, Boolean> answers) {
+        String draftTableName = entity.getDraftTableName();
+        List<String> keyNames = entity.getKeyNames();
+
+        Map<String, Object> draftKeys = new HashMap<>(keys);
+        draftKeys.put(Drafts.IS_ACTIVE_ENTITY, false);
+        CqnSelect document = Select.from(draftTableName)
+            .columns(CQL.get(Drafts.DRAFT_ADMINISTRATIVE_DATA_DRAFT_UUID))
+            .matching(draftKeys);
+        Predicate inDocument = CQL.get(Drafts.DRAFT_ADMINISTRATIVE_DATA_DRAFT_UUID).in(document);
+
+        Result draftRows = db.run(Select.copy(KeyPredicates.keySelect(draftTableName, keyNames, inDocument))
+            .limit(PREFETCH_LIMIT));
+        if (draftRows.rowCount() == 0) {
+            return;
+        }
+        List<Map<String, Object>> documentKeys = new ArrayList<>();
+        draftRows.forEach(row -> documentKeys.add(KeyPredicates.keys(row, keyNames)));
+        Result activeRows = db.run(KeyPredicates.keySelect(entity.getDbEntityName(), keyNames,
+            KeyPredicates.in(keyNames, keyNames, documentKeys)));
+
+        documentKeys.forEach(row -> answers.put(cacheKey(entity.getDbEntityName(), row, keyNames), false));
+        activeRows.forEach(row -> answers.put(cacheKey(entity.getDbEntityName(), row, keyNames), true));
+        logger.debug("Probed {} draft rows of {} for active entities: {} exist{}", documentKeys.size(),
+            entity.getQualifiedName(), activeRows.rowCount(),
+            documentKeys.size() == PREFETCH_LIMIT ? " (limit reached)" : "");
+    }
+
+    private static Probes changeSetProbes() {
+        if (!ChangeSetContext.isActive()) {
+            return null;
+        }
+        return changeSetScoped.computeIfAbsent(ChangeSetContext.getCurrent(), changeSet -> new Probes());
+    }
+
+    private static String cacheKey(String dbEntityName, Map<String, Object> row, List<String> keyNames) {
+        StringBuilder cacheKey = new StringBuilder(dbEntityName);
+        for (String keyName : keyNames) {
+            cacheKey.append('|').append(row.get(keyName));
+        }
+        return cacheKey.toString();
+    }
+}
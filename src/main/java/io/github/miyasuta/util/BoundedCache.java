@@ -0,0 +1,42 @@
+package io.github.miyasuta.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Small thread-safe LRU cache with a fixed maximum number of entries.
+ */
+public class BoundedCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    public BoundedCache(int maxSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void removeIf(Predicate<K> condition) {
+        entries.keySet().removeIf(condition);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
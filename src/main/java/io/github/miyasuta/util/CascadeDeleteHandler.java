@@ -1,14 +1,14 @@
 package io.github.miyasuta.util;
 
 import com.sap.cds.Result;
+import com.sap.cds.Row;
 import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Predicate;
 import com.sap.cds.ql.Select;
 import com.sap.cds.ql.Update;
 import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.ql.cqn.CqnSortSpecification;
 import com.sap.cds.ql.cqn.CqnUpdate;
-import com.sap.cds.reflect.CdsAssociationType;
-import com.sap.cds.reflect.CdsElement;
-import com.sap.cds.reflect.CdsEntity;
 import com.sap.cds.services.cds.CdsDeleteEventContext;
 import com.sap.cds.services.draft.DraftCancelEventContext;
 import com.sap.cds.services.persistence.PersistenceService;
@@ -16,6 +16,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Handles cascading soft delete operations for composition children.
@@ -26,176 +29,525 @@ public class CascadeDeleteHandler {
     private static final String FIELD_IS_DELETED = "isDeleted";
     private static final String FIELD_DELETED_AT = "deletedAt";
     private static final String FIELD_DELETED_BY = "deletedBy";
+    static final int MAX_CASCADE_DEPTH = 1000;
+    private static final int HIERARCHY_PAGE_SIZE = 1000;
 
     /**
-     * Recursively soft deletes composition children of a given entity.
+     * Soft deletes composition children of a given entity, using the configured cascade mode.
      */
-    public static void softDeleteCompositionChildren(CdsDeleteEventContext context, CdsEntity entity,
-                                                     Map<String, Object> parentKeys, Map<String, Object> deletionData) {
-        List<CdsElement> compositionElements = EntityMetadataHelper.getCompositionElements(entity);
+    public static void softDeleteCompositionChildren(CdsDeleteEventContext context, EntityMetadataRegistry registry,
+                                                     EntityMetadata entity, Map<String, Object> parentKeys,
+                                                     Map<String, Object> deletionData) {
+        if (parentKeys.isEmpty()) {
+            return;
+        }
         PersistenceService db = context.getServiceCatalog().getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
 
-        for (CdsElement element : compositionElements) {
-            CdsAssociationType assocType = (CdsAssociationType) element.getType();
-            CdsEntity childEntity = assocType.getTarget();
+        if (SoftDeleteConfig.getCascadeMode(context.getCdsRuntime()) == SoftDeleteConfig.CascadeMode.ROW) {
+            softDeleteCompositionChildrenPerRow(db, registry.getCascadePlan(entity).getRoot(), parentKeys,
+                deletionData, SoftDeleteConfig.getCascadePageSize(context.getCdsRuntime()), 1);
+            return;
+        }
+
+        softDeleteCompositionChildrenInChunks(db, registry, entity, parentKeys, deletionData, 0, Supplier::get);
+    }
+
+    /**
+     * Soft deletes composition children of a given entity set-based, level by level.
+     * With a chunk size greater than 0, each level is updated in chunks of at most that many rows,
+     * and every chunk is executed through the chunk runner (e.g. in its own transaction).
+     */
+    public static void softDeleteCompositionChildrenInChunks(PersistenceService db, EntityMetadataRegistry registry,
+                                                             EntityMetadata entity, Map<String, Object> parentKeys,
+                                                             Map<String, Object> deletionData, int chunkSize,
+                                                             Function<Supplier<Long>, Long> chunkRunner) {
+        if (parentKeys.isEmpty()) {
+            return;
+        }
+
+        softDeleteCompositionChildren(db, registry, entity,
+            foreignKeyNames -> KeyPredicates.matching(foreignKeyNames, entity.getKeyNames(), parentKeys),
+            deletionData, chunkSize, chunkRunner, new HashMap<>());
+    }
+
+    /**
+     * Soft deletes the composition children of all parents matched by the predicate on the child's foreign keys
+     * (e.g. a tuple IN list of many parent keys), level by level along the entity's cascade plan.
+     * The soft deleted rows are added per entity to rowCounts.
+     */
+    public static void softDeleteCompositionChildren(PersistenceService db, EntityMetadataRegistry registry,
+                                                     EntityMetadata entity, Function<List<String>, Predicate> parentMatch,
+                                                     Map<String, Object> deletionData, int chunkSize,
+                                                     Function<Supplier<Long>, Long> chunkRunner,
+                                                     Map<String, Long> rowCounts) {
+        CascadePlan plan = registry.getCascadePlan(entity);
+        if (plan.isEmpty()) {
+            return;
+        }
+        softDeleteLevels(db, List.of(new LevelParent(plan.getRoot(), parentMatch)), 0, deletionData, chunkSize,
+            chunkRunner, rowCounts);
+    }
 
-            if (!EntityMetadataHelper.isSoftDeleteEnabled(childEntity)) {
-                continue;
+    /**
+     * Soft deletes breadth-first, one level of the composition tree after the other, starting with the
+     * children of the given parents at the given depth, until a level is empty or the depth cap is reached.
+     */
+    private static void softDeleteLevels(PersistenceService db, List<LevelParent> parents, int depth,
+                                         Map<String, Object> deletionData, int chunkSize,
+                                         Function<Supplier<Long>, Long> chunkRunner, Map<String, Long> rowCounts) {
+        List<LevelParent> level = parents;
+        while (!level.isEmpty()) {
+            if (++depth > MAX_CASCADE_DEPTH) {
+                logger.warn("Cascade below {} stopped after {} levels",
+                    level.get(0).node.getEntity().getQualifiedName(), MAX_CASCADE_DEPTH);
+                break;
             }
+            level = softDeleteCompositionLevel(db, level, depth, deletionData, chunkSize, chunkRunner, rowCounts);
+        }
+    }
 
-            try {
-                String childDbEntityName = EntityMetadataHelper.getDbEntityName(childEntity);
+    /**
+     * Restores the composition children of all parents matched by the predicate on the child's foreign keys
+     * that were soft deleted together with their parent, i.e. at the given deletedAt. Children deleted
+     * individually before remain deleted. Deeper levels are restored first, so that their parents can still
+     * be identified by deletedAt. The restored rows are added per entity to rowCounts. Failures are not caught,
+     * so that the caller can roll back and report the restore as failed instead of restoring only a part of it.
+     */
+    public static void restoreCompositionChildren(PersistenceService db, EntityMetadataRegistry registry,
+                                                  EntityMetadata entity, Function<List<String>, Predicate> parentMatch,
+                                                  Object deletedAt, Map<String, Long> rowCounts) {
+        restoreCompositionLevel(db, registry.getCascadePlan(entity).getRoot(), parentMatch, deletedAt, rowCounts, 1);
+    }
 
-                // Extract foreign key name from the composition's on clause
-                String foreignKeyName = EntityMetadataHelper.extractForeignKeyName(element, parentKeys);
-                if (foreignKeyName == null) {
-                    logger.warn("Could not determine foreign key for composition '{}', skipping cascade",
-                        element.getName());
+    private static void restoreCompositionLevel(PersistenceService db, CascadePlan.Node parent,
+                                                Function<List<String>, Predicate> parentMatch,
+                                                Object deletedAt, Map<String, Long> rowCounts, int depth) {
+        if (depth > MAX_CASCADE_DEPTH) {
+            throw new IllegalStateException("Restore below " + parent.getEntity().getQualifiedName()
+                + " exceeded " + MAX_CASCADE_DEPTH + " levels");
+        }
+        Map<String, Object> restoreData = new HashMap<>();
+        restoreData.put(FIELD_IS_DELETED, false);
+        restoreData.put(FIELD_DELETED_AT, null);
+        restoreData.put(FIELD_DELETED_BY, null);
+
+        for (CascadePlan.Node child : parent.getChildren()) {
+            Predicate childMatch = CQL.and(parentMatch.apply(child.getForeignKeyNames()),
+                CQL.and(CQL.get(FIELD_IS_DELETED).eq(true), CQL.get(FIELD_DELETED_AT).eq(deletedAt)));
+
+            if (!child.getChildren().isEmpty() && !child.getKeyNames().isEmpty()) {
+                CqnSelect childKeySelect = KeyPredicates.keySelect(child.getTableName(), child.getKeyNames(),
+                    childMatch);
+
+                // Self-referencing compositions only terminate on data: stop once a level is empty
+                if (!child.isRecursive() || db.run(Select.copy(childKeySelect).limit(1)).rowCount() > 0) {
+                    restoreCompositionLevel(db, child,
+                        nextForeignKeyNames -> KeyPredicates.in(nextForeignKeyNames, childKeySelect), deletedAt,
+                        rowCounts, depth + 1);
+                }
+            }
+
+            long rowCount = db.run(Update.entity(child.getTableName()).data(restoreData).where(childMatch))
+                .rowCount();
+            rowCounts.merge(child.getEntity().getQualifiedName(), rowCount, Long::sum);
+            logger.debug("Restored {} rows of {}", rowCount, child.getTableName());
+        }
+    }
+
+    /**
+     * Plan nodes of one level of the cascade, with the predicate that matches their children by foreign key.
+     */
+    private static final class LevelParent {
+        private final CascadePlan.Node node;
+        private final Function<List<String>, Predicate> childMatch;
+
+        private LevelParent(CascadePlan.Node node, Function<List<String>, Predicate> childMatch) {
+            this.node = node;
+            this.childMatch = childMatch;
+        }
+    }
+
+    /**
+     * Soft deletes all children of one composition level with set-based UPDATEs and returns the next level.
+     * Parents are identified by a predicate on the child's foreign key: a literal for the root level,
+     * and an IN subselect of the parent level's keys below that. Sibling compositions of the level that
+     * target the same entity (e.g. two compositions of the same item type, or an entity reached through
+     * several parents) are coalesced into one UPDATE with OR-ed predicates. Siblings that target different
+     * entities still need one UPDATE each: the number of statements is the number of distinct child entities
+     * summed over all levels, i.e. it grows with the size of the composition model, not with the number of rows.
+     * These UPDATEs run one after another: neither CAP bulk execution nor a JDBC batch can combine statements
+     * on different tables, so the latency of a cascade still grows with the width of the composition tree.
+     * Hierarchies (see {@link CascadePlan.Node#isHierarchy()}) are closed within the level, see
+     * {@link #softDeleteHierarchy}.
+     */
+    private static List<LevelParent> softDeleteCompositionLevel(PersistenceService db, List<LevelParent> parents,
+                                                                int depth, Map<String, Object> deletionData,
+                                                                int chunkSize, Function<Supplier<Long>, Long> chunkRunner,
+                                                                Map<String, Long> rowCounts) {
+        // Group the children of all parents of this level by child entity
+        Map<String, List<Predicate>> childMatches = new LinkedHashMap<>();
+        Map<String, CascadePlan.Node> childNodes = new LinkedHashMap<>();
+        Set<String> recursiveChildren = new HashSet<>();
+        for (LevelParent parent : parents) {
+            for (CascadePlan.Node child : parent.node.getChildren()) {
+                // The hierarchy below a hierarchy node was already soft deleted as a whole
+                if (parent.node.isHierarchy() && child.isHierarchy()) {
                     continue;
                 }
+                String childName = child.getEntity().getQualifiedName();
+                childMatches.computeIfAbsent(childName, name -> new ArrayList<>())
+                    .add(parent.childMatch.apply(child.getForeignKeyNames()));
+                childNodes.putIfAbsent(childName, child);
+                if (child.isRecursive()) {
+                    recursiveChildren.add(childName);
+                }
+            }
+        }
+
+        List<LevelParent> nextLevel = new ArrayList<>();
+        for (Map.Entry<String, List<Predicate>> entry : childMatches.entrySet()) {
+            CascadePlan.Node child = childNodes.get(entry.getKey());
+            EntityMetadata childEntity = child.getEntity();
+            try {
+                String childDbEntityName = child.getTableName();
+                Predicate childMatch = entry.getValue().size() == 1
+                    ? entry.getValue().get(0) : CQL.or(entry.getValue());
+
+                // Update all children of this level, but ONLY if they are not already deleted
+                long start = System.nanoTime();
+                long rowCount;
+                if (chunkSize > 0 && !child.getKeyNames().isEmpty()) {
+                    rowCount = updateInChunks(db, childEntity, childMatch, deletionData, chunkSize, chunkRunner);
+                } else {
+                    CqnUpdate childUpdate = Update.entity(childDbEntityName)
+                        .data(deletionData)
+                        .where(CQL.and(childMatch, CQL.get(FIELD_IS_DELETED).eq(false)));
+                    rowCount = db.run(childUpdate).rowCount();
+                }
+                recordCascade(childEntity, rowCount, start);
+                rowCounts.merge(childEntity.getQualifiedName(), rowCount, Long::sum);
+                logger.debug("Cascaded soft delete to {} rows of {} ({} compositions)",
+                    rowCount, childDbEntityName, entry.getValue().size());
 
-                // Get the parent key value (assuming single key for simplicity)
-                Object parentKeyValue = parentKeys.values().iterator().next();
+                if (child.getChildren().isEmpty() || child.getKeyNames().isEmpty()) {
+                    continue;
+                }
 
-                // First, query children to get their keys for recursive cascade
-                CqnSelect childSelect = Select.from(childDbEntityName)
-                    .where(CQL.get(foreignKeyName).eq(parentKeyValue));
-                Result childrenResult = db.run(childSelect);
+                if (child.isHierarchy()) {
+                    softDeleteHierarchy(db, child, childMatch, depth, deletionData, chunkSize, chunkRunner,
+                        rowCounts);
+                    continue;
+                }
 
-                // Update children with soft delete data, but ONLY if they are not already deleted
-                CqnUpdate childUpdate = Update.entity(childDbEntityName)
-                    .data(deletionData)
-                    .where(b -> b.get(foreignKeyName).eq(parentKeyValue)
-                              .and(b.get(FIELD_IS_DELETED).eq(false)));
-
-                db.run(childUpdate);
-
-                // Recursively handle nested compositions for each child
-                for (var child : childrenResult) {
-                    // Extract child's keys (excluding draft virtual keys)
-                    Map<String, Object> childKeys = new HashMap<>();
-                    for (String keyName : EntityMetadataHelper.getEntityKeyNames(childEntity)) {
-                        Object keyValue = child.get(keyName);
-                        if (keyValue != null) {
-                            childKeys.put(keyName, keyValue);
-                        }
-                    }
+                // Keys of all children of this level (including already deleted ones, so that their
+                // not yet deleted descendants are reached as well)
+                CqnSelect childKeySelect = KeyPredicates.keySelect(childDbEntityName, child.getKeyNames(), childMatch);
 
-                    if (!childKeys.isEmpty()) {
-                        softDeleteCompositionChildren(context, childEntity, childKeys, deletionData);
-                    }
+                // Self-referencing compositions only terminate on data: stop once a level is empty
+                if (recursiveChildren.contains(entry.getKey())
+                    && db.run(Select.copy(childKeySelect).limit(1)).rowCount() == 0) {
+                    continue;
                 }
 
+                nextLevel.add(new LevelParent(child,
+                    nextForeignKeyNames -> KeyPredicates.in(nextForeignKeyNames, childKeySelect)));
+
             } catch (Exception e) {
                 logger.warn("Failed to cascade soft delete to child entity '{}': {}",
                     childEntity.getQualifiedName(), e.getMessage());
             }
         }
+        return nextLevel;
     }
 
     /**
-     * Recursively soft deletes composition children of a draft entity using PersistenceService.
+     * Soft deletes the whole hierarchy below the children matched by childMatch (which have just been soft
+     * deleted), together with the other composition children of all its rows. CQN has no recursive common table
+     * expressions, so the hierarchy is expanded depth by depth: the keys of one depth are read in keyset pages,
+     * and the next depth is matched with literal IN lists of one page each. The keys are read without filtering on
+     * isDeleted, so that the descendants of rows that were soft deleted earlier are reached as well. Only the keys
+     * of one depth are held in memory, and no statement nests subqueries of previous depths, so the statements
+     * stay the same size at any depth. Their number grows with the depth and the number of pages per depth.
      */
-    public static void softDeleteDraftCompositionChildren(DraftCancelEventContext context, PersistenceService db,
-                                                          CdsEntity entity, Map<String, Object> parentKeys,
-                                                          Map<String, Object> deletionData) {
-        List<CdsElement> compositionElements = EntityMetadataHelper.getCompositionElements(entity);
+    private static void softDeleteHierarchy(PersistenceService db, CascadePlan.Node hierarchy, Predicate childMatch,
+                                            int depth, Map<String, Object> deletionData, int chunkSize,
+                                            Function<Supplier<Long>, Long> chunkRunner, Map<String, Long> rowCounts) {
+        EntityMetadata entity = hierarchy.getEntity();
+        List<String> keyNames = hierarchy.getKeyNames();
+        int pageSize = chunkSize > 0 ? chunkSize : HIERARCHY_PAGE_SIZE;
+
+        List<Map<String, Object>> frontier = readKeys(db, hierarchy.getTableName(), keyNames, childMatch, pageSize);
+        long total = 0;
+        int level = depth;
+        while (!frontier.isEmpty()) {
+            List<List<Map<String, Object>>> pages = partition(frontier, pageSize);
+
+            // The other composition children of this depth's rows
+            for (List<Map<String, Object>> page : pages) {
+                softDeleteLevels(db, List.of(new LevelParent(hierarchy,
+                    nextForeignKeyNames -> KeyPredicates.in(nextForeignKeyNames, keyNames, page))), level,
+                    deletionData, chunkSize, chunkRunner, rowCounts);
+            }
 
-        for (CdsElement element : compositionElements) {
-            CdsAssociationType assocType = (CdsAssociationType) element.getType();
-            CdsEntity childEntity = assocType.getTarget();
+            if (++level > MAX_CASCADE_DEPTH) {
+                logger.warn("Cascade of hierarchy {} stopped after {} levels", entity.getQualifiedName(),
+                    MAX_CASCADE_DEPTH);
+                break;
+            }
 
-            // Check if the child entity is soft-delete enabled
-            if (!EntityMetadataHelper.isSoftDeleteEnabled(childEntity)) {
-                continue;
+            // The next depth: rows whose parent is in this depth
+            List<Map<String, Object>> next = new ArrayList<>();
+            for (List<Map<String, Object>> page : pages) {
+                Predicate descendantMatch = KeyPredicates.in(hierarchy.getForeignKeyNames(), keyNames, page);
+                long start = System.nanoTime();
+                long rowCount;
+                if (chunkSize > 0) {
+                    rowCount = updateInChunks(db, entity, descendantMatch, deletionData, chunkSize, chunkRunner);
+                } else {
+                    rowCount = db.run(Update.entity(hierarchy.getTableName())
+                        .data(deletionData)
+                        .where(CQL.and(descendantMatch, CQL.get(FIELD_IS_DELETED).eq(false))))
+                        .rowCount();
+                }
+                recordCascade(entity, rowCount, start);
+                total += rowCount;
+                next.addAll(readKeys(db, hierarchy.getTableName(), keyNames, descendantMatch, pageSize));
             }
+            frontier = next;
+        }
+
+        rowCounts.merge(entity.getQualifiedName(), total, Long::sum);
+        logger.debug("Cascaded soft delete to {} rows of hierarchy {} over {} levels", total,
+            hierarchy.getTableName(), level - depth);
+    }
 
+    /**
+     * Reads the keys of all rows matching the predicate, in keyset pages of at most pageSize rows.
+     */
+    private static List<Map<String, Object>> readKeys(PersistenceService db, String entityName, List<String> keyNames,
+                                                      Predicate where, int pageSize) {
+        List<Map<String, Object>> keys = new ArrayList<>();
+        forEachKeyPage(db, entityName, keyNames, Collections.emptyList(), where, pageSize,
+            page -> page.forEach(row -> keys.add(KeyPredicates.keys(row, keyNames))));
+        return keys;
+    }
+
+    private static <T> List<List<T>> partition(List<T> list, int size) {
+        List<List<T>> pages = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += size) {
+            pages.add(list.subList(from, Math.min(from + size, list.size())));
+        }
+        return pages;
+    }
+
+    /**
+     * Soft deletes the not yet deleted children matching the predicate in chunks: each chunk selects
+     * up to chunkSize keys and updates these rows, until no rows are left. Returns the number of updated rows.
+     */
+    private static long updateInChunks(PersistenceService db, EntityMetadata childEntity, Predicate childMatch,
+                                       Map<String, Object> deletionData, int chunkSize,
+                                       Function<Supplier<Long>, Long> chunkRunner) {
+        String childDbEntityName = childEntity.getDbEntityName();
+        List<String> keyNames = childEntity.getKeyNames();
+        Predicate notDeleted = CQL.and(childMatch, CQL.get(FIELD_IS_DELETED).eq(false));
+
+        long total = 0;
+        long updated;
+        do {
+            updated = chunkRunner.apply(() -> {
+                Result chunk = db.run(Select.copy(KeyPredicates.keySelect(childDbEntityName, keyNames, notDeleted))
+                    .limit(chunkSize));
+                if (chunk.rowCount() == 0) {
+                    return 0L;
+                }
+                List<Map<String, Object>> keys = new ArrayList<>();
+                chunk.forEach(row -> keys.add(KeyPredicates.keys(row, keyNames)));
+                return db.run(Update.entity(childDbEntityName)
+                    .data(deletionData)
+                    .where(CQL.and(KeyPredicates.in(keyNames, keyNames, keys), CQL.get(FIELD_IS_DELETED).eq(false))))
+                    .rowCount();
+            });
+            total += updated;
+        } while (updated > 0);
+        return total;
+    }
+
+    /**
+     * Recursively soft deletes composition children along a cascade plan node, one parent row at a time.
+     */
+    private static void softDeleteCompositionChildrenPerRow(PersistenceService db, CascadePlan.Node parent,
+                                                            Map<String, Object> parentKeys,
+                                                            Map<String, Object> deletionData, int pageSize,
+                                                            int depth) {
+        if (depth > MAX_CASCADE_DEPTH) {
+            logger.warn("Cascade below {} stopped after {} levels", parent.getEntity().getQualifiedName(),
+                MAX_CASCADE_DEPTH);
+            return;
+        }
+        for (CascadePlan.Node child : parent.getChildren()) {
             try {
-                String childDraftTableName = childEntity.getQualifiedName() + "_drafts";
+                String childDbEntityName = child.getTableName();
+                Predicate childMatch = KeyPredicates.matching(child.getForeignKeyNames(), parent.getKeyNames(),
+                    parentKeys);
 
-                // Extract foreign key name from the composition's on clause
-                String foreignKeyName = EntityMetadataHelper.extractForeignKeyName(element, parentKeys);
-                if (foreignKeyName == null) {
-                    logger.warn("Could not determine foreign key for composition '{}', skipping cascade",
-                        element.getName());
-                    continue;
+                // Update children with soft delete data, but ONLY if they are not already deleted
+                CqnUpdate childUpdate = Update.entity(childDbEntityName)
+                    .data(deletionData)
+                    .where(CQL.and(childMatch, CQL.get(FIELD_IS_DELETED).eq(false)));
+
+                long start = System.nanoTime();
+                Result updateResult = db.run(childUpdate);
+                recordCascade(child.getEntity(), updateResult.rowCount(), start);
+
+                // Recursively handle nested compositions for each child, reading only the keys page by page
+                if (!child.getChildren().isEmpty() && !child.getKeyNames().isEmpty()) {
+                    forEachKeyPage(db, childDbEntityName, child.getKeyNames(), Collections.emptyList(),
+                        childMatch, pageSize, page -> page.forEach(childKeys ->
+                            softDeleteCompositionChildrenPerRow(db, child,
+                                KeyPredicates.keys(childKeys, child.getKeyNames()), deletionData, pageSize,
+                                depth + 1)));
                 }
 
-                // Get the parent key value (assuming single key for simplicity)
-                Object parentKeyValue = parentKeys.values().iterator().next();
-
-                // First, query draft children to get their keys for recursive cascade
-                CqnSelect childSelect = Select.from(childDraftTableName)
-                    .where(CQL.get(foreignKeyName).eq(parentKeyValue));
-
-                Result childrenResult = db.run(childSelect);
-
-                // For each child, update with soft delete data and recursively process
-                for (var child : childrenResult) {
-                    // Skip already deleted children to preserve their original deletion metadata
-                    Object isDeleted = child.get(FIELD_IS_DELETED);
-                    if (isDeleted != null && (Boolean) isDeleted) {
-                        continue;
-                    }
-
-                    // Extract child's keys
-                    Map<String, Object> childKeys = new HashMap<>();
-                    for (String keyName : EntityMetadataHelper.getEntityKeyNames(childEntity)) {
-                        Object keyValue = child.get(keyName);
-                        if (keyValue != null) {
-                            childKeys.put(keyName, keyValue);
-                        }
-                    }
+            } catch (Exception e) {
+                logger.warn("Failed to cascade soft delete to child entity '{}': {}",
+                    child.getEntity().getQualifiedName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Soft deletes composition children of a draft entity using PersistenceService.
+     * Children are processed level by level: all draft children of one composition level are
+     * updated with a single bulk UPDATE, sharing the same deletion timestamp and user.
+     */
+    public static void softDeleteDraftCompositionChildren(DraftCancelEventContext context, PersistenceService db,
+                                                          EntityMetadataRegistry registry, EntityMetadata entity,
+                                                          Map<String, Object> parentKeys,
+                                                          Map<String, Object> deletionData) {
+        // Extract deletionData without IsActiveEntity (only isDeleted, deletedAt, deletedBy)
+        Map<String, Object> childDeletionData = new HashMap<>();
+        childDeletionData.put(FIELD_IS_DELETED, deletionData.get(FIELD_IS_DELETED));
+        childDeletionData.put(FIELD_DELETED_AT, deletionData.get(FIELD_DELETED_AT));
+        childDeletionData.put(FIELD_DELETED_BY, deletionData.get(FIELD_DELETED_BY));
+
+        softDeleteDraftCompositionLevel(db, registry.getCascadePlan(entity).getRoot(), List.of(parentKeys),
+            childDeletionData, SoftDeleteConfig.getCascadePageSize(context.getCdsRuntime()), 1);
+    }
 
-                    if (!childKeys.isEmpty()) {
-                        // Include IsActiveEntity=false in the matching condition
-                        Map<String, Object> childMatchKeys = new HashMap<>(childKeys);
-                        childMatchKeys.put("IsActiveEntity", false);
+    /**
+     * Soft deletes the draft children of all given parents, one bulk UPDATE per draft table and page of children,
+     * then continues with the next level.
+     */
+    private static void softDeleteDraftCompositionLevel(PersistenceService db, CascadePlan.Node parent,
+                                                        List<Map<String, Object>> parentKeysList,
+                                                        Map<String, Object> childDeletionData, int pageSize,
+                                                        int depth) {
+        if (depth > MAX_CASCADE_DEPTH) {
+            logger.warn("Draft cascade below {} stopped after {} levels", parent.getEntity().getQualifiedName(),
+                MAX_CASCADE_DEPTH);
+            return;
+        }
+        for (CascadePlan.Node child : parent.getChildren()) {
+            try {
+                String childDraftTableName = child.getDraftTableName();
+
+                // Read only the keys and isDeleted of the draft children of all parents, page by page
+                Predicate childMatch = KeyPredicates.in(child.getForeignKeyNames(), parent.getKeyNames(),
+                    parentKeysList);
+                forEachKeyPage(db, childDraftTableName, child.getKeyNames(), List.of(FIELD_IS_DELETED),
+                    childMatch, pageSize, page -> {
+                        List<Map<String, Object>> childKeysList = new ArrayList<>();
+                        List<Map<String, Object>> updateEntries = new ArrayList<>();
+                        for (Map<String, Object> row : page) {
+                            // Skip already deleted children to preserve their original deletion metadata
+                            Object isDeleted = row.get(FIELD_IS_DELETED);
+                            if (isDeleted != null && (Boolean) isDeleted) {
+                                continue;
+                            }
+
+                            // Each entry carries the keys (including IsActiveEntity=false) and the deletion data
+                            Map<String, Object> childKeys = KeyPredicates.keys(row, child.getKeyNames());
+                            Map<String, Object> entry = new HashMap<>(childKeys);
+                            entry.put("IsActiveEntity", false);
+                            entry.putAll(childDeletionData);
+
+                            childKeysList.add(childKeys);
+                            updateEntries.add(entry);
+                        }
 
-                        // Extract deletionData without IsActiveEntity (only isDeleted, deletedAt, deletedBy)
-                        Map<String, Object> childDeletionData = new HashMap<>();
-                        childDeletionData.put(FIELD_IS_DELETED, deletionData.get(FIELD_IS_DELETED));
-                        childDeletionData.put(FIELD_DELETED_AT, deletionData.get(FIELD_DELETED_AT));
-                        childDeletionData.put(FIELD_DELETED_BY, deletionData.get(FIELD_DELETED_BY));
+                        if (updateEntries.isEmpty()) {
+                            return;
+                        }
 
+                        // One bulk UPDATE for all draft children of this page
                         CqnUpdate childUpdate = Update.entity(childDraftTableName)
-                            .data(childDeletionData)
-                            .matching(childMatchKeys);
+                            .entries(updateEntries);
 
+                        long start = System.nanoTime();
                         db.run(childUpdate);
+                        recordCascade(child.getEntity(), updateEntries.size(), start);
+                        logger.debug("Cascaded soft delete to {} draft rows of {} via composition '{}'",
+                            updateEntries.size(), childDraftTableName, child.getCompositionName());
 
-                        // Recursively handle nested compositions
-                        softDeleteDraftCompositionChildren(context, db, childEntity, childKeys, deletionData);
-                    }
-                }
+                        // Handle nested compositions for all children of this page
+                        softDeleteDraftCompositionLevel(db, child, childKeysList, childDeletionData, pageSize,
+                            depth + 1);
+                    });
 
             } catch (Exception e) {
                 logger.warn("Failed to cascade soft delete to draft child entity '{}': {}",
-                    childEntity.getQualifiedName(), e.getMessage());
+                    child.getEntity().getQualifiedName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the keys (plus the given columns) of the rows matching the predicate in pages of at most pageSize rows,
+     * ordered by key and continued after the last key of the previous page (keyset pagination),
+     * so that only one page of key columns is held in memory, however many rows match.
+     */
+    private static void forEachKeyPage(PersistenceService db, String entityName, List<String> keyNames,
+                                       List<String> columns, Predicate where, int pageSize,
+                                       Consumer<List<Row>> pageConsumer) {
+        List<String> selectColumns = new ArrayList<>(keyNames);
+        selectColumns.addAll(columns);
+        List<CqnSortSpecification> orderBy = new ArrayList<>();
+        keyNames.forEach(keyName -> orderBy.add(CQL.get(keyName).asc()));
+
+        Map<String, Object> lastKey = null;
+        while (true) {
+            Predicate pageWhere = lastKey == null ? where : CQL.and(where, KeyPredicates.after(keyNames, lastKey));
+            List<Row> page = db.run(Select.copy(KeyPredicates.keySelect(entityName, selectColumns, pageWhere))
+                .orderBy(orderBy)
+                .limit(pageSize)).list();
+            if (page.isEmpty()) {
+                return;
+            }
+            pageConsumer.accept(page);
+            if (page.size() < pageSize) {
+                return;
             }
+            lastKey = KeyPredicates.keys(page.get(page.size() - 1), keyNames);
         }
     }
 
+    private static void recordCascade(EntityMetadata childEntity, long rows, long startNanos) {
+        SoftDeleteMetrics metrics = SoftDeleteMetrics.get();
+        metrics.cascadeLevel(childEntity.getQualifiedName(), System.nanoTime() - startNanos);
+        metrics.cascadeRowsUpdated(childEntity.getQualifiedName(), rows);
+    }
+
     /**
      * Checks if an active entity exists for the given draft entity.
      * Used to determine whether a draft child deletion should be physical (new record) or soft (existing record).
      */
-    public static boolean checkActiveEntityExists(DraftCancelEventContext context, CdsEntity entity, Map<String, Object> keys) {
+    public static boolean checkActiveEntityExists(DraftCancelEventContext context, EntityMetadata entity, Map<String, Object> keys) {
         try {
-            // Get the database entity name
-            String dbEntityName = EntityMetadataHelper.getDbEntityName(entity);
-
-            // Query for active entity (without _drafts suffix, using entity keys only)
-            CqnSelect activeQuery = Select.from(dbEntityName)
-                .columns(CQL.get("ID"))
-                .matching(keys);
-
             PersistenceService db = context.getServiceCatalog()
                 .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
 
-            Result result = db.run(activeQuery);
-
-            boolean exists = result.rowCount() > 0;
+            // Query for active entity (without _drafts suffix, using entity keys only), batched per change set
+            boolean exists = ActiveEntityProbe.exists(db, entity, keys);
             logger.debug("Active entity check for {}: exists={}", entity.getQualifiedName(), exists);
             return exists;
 
@@ -0,0 +1,201 @@
+package io.github.miyasuta.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Immutable, precompiled cascade of a soft delete root entity: a tree of the soft-delete enabled
+ * composition children with everything the cascade statements need (tables, foreign key and key columns).
+ * Plans are compiled once per CdsModel by {@link EntityMetadataRegistry}; the DELETE and draft cancel
+ * cascades only walk the plan. {@link #toString()} renders the tree for debugging.
+ */
+public final class CascadePlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(CascadePlan.class);
+
+    private final Node root;
+
+    private CascadePlan(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the cascade plan of an entity. Compositions without a resolvable foreign key are left out.
+     */
+    public static CascadePlan compile(EntityMetadataRegistry registry, EntityMetadata rootEntity) {
+        return compile(registry, rootEntity, false);
+    }
+
+    /**
+     * Compiles the plan of all composition children of an entity, also those that are not soft-delete enabled,
+     * e.g. for the physical purge, which must not leave orphans behind.
+     */
+    public static CascadePlan compileAllCompositions(EntityMetadataRegistry registry, EntityMetadata rootEntity) {
+        return compile(registry, rootEntity, true);
+    }
+
+    private static CascadePlan compile(EntityMetadataRegistry registry, EntityMetadata rootEntity,
+                                       boolean allCompositions) {
+        Node root = new Node(null, rootEntity, Collections.emptyList(), null, false);
+        Map<String, Node> path = new HashMap<>();
+        compileChildren(registry, root, path, allCompositions);
+        return new CascadePlan(root);
+    }
+
+    private static void compileChildren(EntityMetadataRegistry registry, Node parent, Map<String, Node> path,
+                                        boolean allCompositions) {
+        path.put(parent.entity.getQualifiedName(), parent);
+        for (CompositionMetadata composition : parent.entity.getCompositions()) {
+            EntityMetadata childEntity = registry.get(composition.getTargetEntityName());
+            if (childEntity == null || !(allCompositions || childEntity.isSoftDeleteEnabled())) {
+                continue;
+            }
+            if (composition.getForeignKeyNames().isEmpty()) {
+                logger.warn("Could not determine foreign key for composition '{}' of {}, it is not cascaded",
+                    composition.getElementName(), parent.entity.getQualifiedName());
+                continue;
+            }
+
+            // A composition back to an entity on the path (e.g. a hierarchy) reuses the ancestor's children
+            Node ancestor = path.get(childEntity.getQualifiedName());
+            Node child = new Node(composition.getElementName(), childEntity, composition.getForeignKeyNames(), ancestor,
+                ancestor == parent);
+            parent.children.add(child);
+            if (ancestor == null) {
+                compileChildren(registry, child, path, allCompositions);
+            }
+        }
+        path.remove(parent.entity.getQualifiedName());
+    }
+
+    /**
+     * The root entity of the plan (without composition name and foreign keys).
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * True if the root has no soft-delete enabled composition children, i.e. there is nothing to cascade.
+     */
+    public boolean isEmpty() {
+        return root.getChildren().isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        root.appendTo(builder, 0);
+        return builder.toString();
+    }
+
+    /**
+     * One composition child in the plan.
+     */
+    public static final class Node {
+
+        private final String compositionName;
+        private final EntityMetadata entity;
+        private final List<String> foreignKeyNames;
+        private final Node recursionTarget;
+        private final List<Node> children = new ArrayList<>();
+        private final List<Node> unmodifiableChildren = Collections.unmodifiableList(children);
+        private final boolean hierarchy;
+
+        private Node(String compositionName, EntityMetadata entity, List<String> foreignKeyNames, Node recursionTarget,
+                     boolean hierarchy) {
+            this.compositionName = compositionName;
+            this.entity = entity;
+            this.foreignKeyNames = foreignKeyNames;
+            this.recursionTarget = recursionTarget;
+            this.hierarchy = hierarchy;
+        }
+
+        /**
+         * Name of the composition element in the parent (e.g. "items"), null for the root.
+         */
+        public String getCompositionName() {
+            return compositionName;
+        }
+
+        public EntityMetadata getEntity() {
+            return entity;
+        }
+
+        /**
+         * Database table (entity) the statements of this node run on.
+         */
+        public String getTableName() {
+            return entity.getDbEntityName();
+        }
+
+        public String getDraftTableName() {
+            return entity.getDraftTableName();
+        }
+
+        /**
+         * Foreign key columns pointing to the parent, aligned with the parent's key names. Empty for the root.
+         */
+        public List<String> getForeignKeyNames() {
+            return foreignKeyNames;
+        }
+
+        public List<String> getKeyNames() {
+            return entity.getKeyNames();
+        }
+
+        /**
+         * True if this node composes an entity that is already on the path from the root (e.g. a hierarchy).
+         * Such cascades only terminate on data: a level without rows ends them.
+         */
+        public boolean isRecursive() {
+            return recursionTarget != null;
+        }
+
+        /**
+         * True if this node composes the same entity as its parent (e.g. Composition of many Nodes on
+         * children.parent = $self), i.e. the node and its parent form a hierarchy within one table.
+         */
+        public boolean isHierarchy() {
+            return hierarchy;
+        }
+
+        /**
+         * Composition children of this node; for recursive nodes, the children of the ancestor they refer to.
+         */
+        public List<Node> getChildren() {
+            return recursionTarget != null ? recursionTarget.getChildren() : unmodifiableChildren;
+        }
+
+        private void appendTo(StringBuilder builder, int depth) {
+            builder.append("  ".repeat(depth));
+            if (compositionName != null) {
+                builder.append(compositionName).append(" -> ");
+            }
+            builder.append(entity.getQualifiedName())
+                .append(" [table=").append(getTableName())
+                .append(", keys=").append(getKeyNames());
+            if (!foreignKeyNames.isEmpty()) {
+                builder.append(", fk=").append(foreignKeyNames);
+            }
+            if (entity.isDraftEntity()) {
+                builder.append(", drafts=").append(getDraftTableName());
+            }
+            builder.append(']');
+            if (recursionTarget != null) {
+                builder.append(hierarchy ? " (hierarchy)\n" : " (recursive)\n");
+                return;
+            }
+            builder.append('\n');
+            children.forEach(child -> child.appendTo(builder, depth + 1));
+        }
+
+        @Override
+        public String toString() {
+            return (compositionName != null ? compositionName + " -> " : "") + entity.getQualifiedName()
+                + (hierarchy ? " (hierarchy)" : isRecursive() ? " (recursive)" : "");
+        }
+    }
+}
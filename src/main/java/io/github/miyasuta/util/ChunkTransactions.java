@@ -0,0 +1,29 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.services.changeset.ChangeSetContext;
+import com.sap.cds.services.runtime.CdsRuntime;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the chunks of bulk operations (Java API, asynchronous cascade, purge) in transactions.
+ * All of them use the same approach: every chunk runs in a change set of its own, so that locks are held
+ * only for one chunk at a time and a failing chunk does not roll back the chunks committed before it.
+ */
+public class ChunkTransactions {
+
+    /**
+     * Returns a chunk runner that runs each chunk in its own change set.
+     */
+    public static Function<Supplier<Long>, Long> ownChangeSet(CdsRuntime runtime) {
+        return chunk -> run(runtime, chunk);
+    }
+
+    /**
+     * Runs the chunk in its own change set and returns its row count.
+     */
+    public static long run(CdsRuntime runtime, Supplier<Long> chunk) {
+        return runtime.changeSetContext().run((Function<ChangeSetContext, Long>) changeSet -> chunk.get());
+    }
+}
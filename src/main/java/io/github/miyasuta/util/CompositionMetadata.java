@@ -0,0 +1,59 @@
+package io.github.miyasuta.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable description of a composition edge from a parent entity to a child entity.
+ * Foreign key names are resolved once from the child's back-association and are aligned
+ * with the parent's key names (e.g. parent key "ID" via back-association "order" -> "order_ID").
+ */
+public final class CompositionMetadata {
+
+    private final String elementName;
+    private final String targetEntityName;
+    private final String backAssociationName;
+    private final List<String> foreignKeyNames;
+
+    CompositionMetadata(String elementName, String targetEntityName, String backAssociationName,
+                        List<String> foreignKeyNames) {
+        this.elementName = elementName;
+        this.targetEntityName = targetEntityName;
+        this.backAssociationName = backAssociationName;
+        this.foreignKeyNames = Collections.unmodifiableList(foreignKeyNames);
+    }
+
+    /**
+     * Name of the composition element in the parent entity (e.g. "items").
+     */
+    public String getElementName() {
+        return elementName;
+    }
+
+    /**
+     * Qualified name of the composition target entity.
+     */
+    public String getTargetEntityName() {
+        return targetEntityName;
+    }
+
+    /**
+     * Name of the association in the child entity pointing back to the parent, or null if none was found.
+     */
+    public String getBackAssociationName() {
+        return backAssociationName;
+    }
+
+    /**
+     * Foreign key names in the child entity, one per parent key, in parent key order.
+     * Empty if the back-association could not be resolved.
+     */
+    public List<String> getForeignKeyNames() {
+        return foreignKeyNames;
+    }
+
+    @Override
+    public String toString() {
+        return elementName + " -> " + targetEntityName + " " + foreignKeyNames;
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.miyasuta.util;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, precomputed soft delete metadata of a single entity.
+ * Instances are created by {@link EntityMetadataRegistry} once per CdsModel.
+ */
+public final class EntityMetadata {
+
+    private final String qualifiedName;
+    private final String dbEntityName;
+    private final boolean softDeleteEnabled;
+    private final boolean draftEntity;
+    private final boolean draftRootEntity;
+    private final boolean asyncCascade;
+    private final Duration retention;
+    private final List<String> keyNames;
+    private final List<CompositionMetadata> compositions;
+    private final Map<String, String> associationTargets;
+
+    EntityMetadata(String qualifiedName, String dbEntityName, boolean softDeleteEnabled, boolean draftEntity,
+                   boolean draftRootEntity, boolean asyncCascade, Duration retention, List<String> keyNames,
+                   List<CompositionMetadata> compositions, Map<String, String> associationTargets) {
+        this.qualifiedName = qualifiedName;
+        this.dbEntityName = dbEntityName;
+        this.softDeleteEnabled = softDeleteEnabled;
+        this.draftEntity = draftEntity;
+        this.draftRootEntity = draftRootEntity;
+        this.asyncCascade = asyncCascade;
+        this.retention = retention;
+        this.keyNames = Collections.unmodifiableList(keyNames);
+        this.compositions = Collections.unmodifiableList(compositions);
+        this.associationTargets = Collections.unmodifiableMap(associationTargets);
+    }
+
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * Underlying database entity name (projection source, or the entity itself).
+     */
+    public String getDbEntityName() {
+        return dbEntityName;
+    }
+
+    /**
+     * Name of the draft table of this entity.
+     */
+    public String getDraftTableName() {
+        return qualifiedName + "_drafts";
+    }
+
+    public boolean isSoftDeleteEnabled() {
+        return softDeleteEnabled;
+    }
+
+    /**
+     * True if the entity has the IsActiveEntity key.
+     */
+    public boolean isDraftEntity() {
+        return draftEntity;
+    }
+
+    /**
+     * True if the entity has the @odata.draft.enabled annotation.
+     */
+    public boolean isDraftRootEntity() {
+        return draftRootEntity;
+    }
+
+    /**
+     * True if the entity has the @softdelete.cascade: 'async' annotation: deleting it soft-deletes the entity
+     * synchronously and its composition children in a background job.
+     */
+    public boolean isAsyncCascade() {
+        return asyncCascade;
+    }
+
+    /**
+     * Retention of soft-deleted rows from the @softdelete.retention annotation, or null if they are kept forever.
+     */
+    public Duration getRetention() {
+        return retention;
+    }
+
+    /**
+     * Key names excluding draft virtual keys.
+     */
+    public List<String> getKeyNames() {
+        return keyNames;
+    }
+
+    public List<CompositionMetadata> getCompositions() {
+        return compositions;
+    }
+
+    /**
+     * Returns the qualified target entity name of an association or composition, or null if unknown.
+     */
+    public String getAssociationTarget(String associationName) {
+        return associationTargets.get(associationName);
+    }
+
+    @Override
+    public String toString() {
+        return qualifiedName + " (db=" + dbEntityName + ", softDelete=" + softDeleteEnabled
+            + ", draft=" + draftEntity + ", asyncCascade=" + asyncCascade
+            + (retention != null ? ", retention=" + retention : "") + ", keys=" + keyNames
+            + ", compositions=" + compositions + ")";
+    }
+}
@@ -3,7 +3,11 @@ package io.github.miyasuta.util;
 import com.sap.cds.reflect.CdsAssociationType;
 import com.sap.cds.reflect.CdsElement;
 import com.sap.cds.reflect.CdsEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -14,8 +18,13 @@ import java.util.stream.Collectors;
  */
 public class EntityMetadataHelper {
 
+    private static final Logger logger = LoggerFactory.getLogger(EntityMetadataHelper.class);
+
     private static final String ANNOTATION_SOFTDELETE_ENABLED = "@softdelete.enabled";
     private static final String ANNOTATION_DRAFT_ENABLED = "@odata.draft.enabled";
+    private static final String ANNOTATION_SOFTDELETE_CASCADE = "@softdelete.cascade";
+    private static final String CASCADE_ASYNC = "async";
+    private static final String ANNOTATION_SOFTDELETE_RETENTION = "@softdelete.retention";
     private static final List<String> DRAFT_VIRTUAL_KEYS = Arrays.asList("IsActiveEntity", "HasActiveEntity", "HasDraftEntity");
 
     /**
@@ -29,6 +38,39 @@ public class EntityMetadataHelper {
         return Boolean.TRUE.equals(annotationValue);
     }
 
+    /**
+     * Checks if an entity has the @softdelete.cascade: 'async' annotation.
+     */
+    public static boolean isAsyncCascade(CdsEntity entity) {
+        if (entity == null) {
+            return false;
+        }
+        Object annotationValue = entity.getAnnotationValue(ANNOTATION_SOFTDELETE_CASCADE, null);
+        return annotationValue != null && CASCADE_ASYNC.equalsIgnoreCase(annotationValue.toString());
+    }
+
+    /**
+     * Returns the retention of soft-deleted rows from the @softdelete.retention annotation
+     * (ISO-8601 duration, e.g. 'P90D'), or null if the entity has no or an invalid retention.
+     */
+    public static Duration getRetention(CdsEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+        Object annotationValue = entity.getAnnotationValue(ANNOTATION_SOFTDELETE_RETENTION, null);
+        if (annotationValue == null) {
+            return null;
+        }
+        try {
+            Duration retention = Duration.parse(annotationValue.toString().trim());
+            return retention.isNegative() ? null : retention;
+        } catch (DateTimeParseException e) {
+            logger.warn("Ignoring invalid {} '{}' on entity {}", ANNOTATION_SOFTDELETE_RETENTION,
+                annotationValue, entity.getQualifiedName());
+            return null;
+        }
+    }
+
     /**
      * Checks if an entity is a draft root entity (has @odata.draft.enabled annotation).
      * Draft root entities should use physical delete when discarded.
@@ -114,8 +156,14 @@ public class EntityMetadataHelper {
      * where keys contain both parent and child entity keys.
      */
     public static Map<String, Object> filterKeysForEntity(Map<String, Object> keys, CdsEntity entity) {
+        return filterKeys(keys, getEntityKeyNames(entity));
+    }
+
+    /**
+     * Filters keys to only include the given entity key names.
+     */
+    public static Map<String, Object> filterKeys(Map<String, Object> keys, List<String> entityKeyNames) {
         Map<String, Object> filtered = new HashMap<>();
-        List<String> entityKeyNames = getEntityKeyNames(entity);
 
         for (Map.Entry<String, Object> entry : keys.entrySet()) {
             if (entityKeyNames.contains(entry.getKey())) {
@@ -134,35 +182,49 @@ public class EntityMetadataHelper {
     }
 
     /**
-     * Extracts the foreign key name from a composition element.
+     * Extracts the foreign key names from a composition element, one per parent key, in parent key order.
      * For example, for composition "items" pointing to OrderItems with back-association "order",
-     * it extracts "order_ID".
+     * it extracts "order_ID" (or "order_tenant", "order_ID" for a composite key).
+     * Returns an empty list if the target entity has no back-association.
      */
-    public static String extractForeignKeyName(CdsElement element, Map<String, Object> parentKeys) {
+    public static List<String> extractForeignKeyNames(CdsElement element, List<String> parentKeyNames) {
+        String associationName = findBackAssociationName(element);
+        if (associationName == null) {
+            return Collections.emptyList();
+        }
+
+        // Build foreign key names: [associationName]_[parentKeyName]
+        List<String> foreignKeyNames = new ArrayList<>();
+        for (String parentKeyName : parentKeyNames) {
+            foreignKeyNames.add(associationName + "_" + parentKeyName);
+        }
+        return foreignKeyNames;
+    }
+
+    /**
+     * Finds the name of the back-association in the composition target that points to the parent.
+     * Compositions are skipped, so that the composition itself is not taken for the back-association
+     * of a hierarchy (e.g. children: Composition of many Nodes on children.parent = $self).
+     * Returns null if the target entity has no such association.
+     */
+    public static String findBackAssociationName(CdsElement element) {
         CdsAssociationType assocType = (CdsAssociationType) element.getType();
         CdsEntity targetEntity = assocType.getTarget();
+        String parentEntityName = element.getDeclaringType().getQualifiedName();
 
-        // Find the back-association in the target entity that points to the parent
-        String associationName = null;
         for (var targetElement : targetEntity.elements().collect(Collectors.toList())) {
             if (targetElement.getType().isAssociation()) {
                 CdsAssociationType targetAssocType = (CdsAssociationType) targetElement.getType();
-                String parentEntityName = element.getDeclaringType().getQualifiedName();
+                if (targetAssocType.isComposition()) {
+                    continue;
+                }
                 String targetOfTarget = targetAssocType.getTarget().getQualifiedName();
 
                 if (targetOfTarget.equals(parentEntityName)) {
-                    associationName = targetElement.getName();
-                    break;
+                    return targetElement.getName();
                 }
             }
         }
-
-        if (associationName == null) {
-            return null;
-        }
-
-        // Build foreign key name: [associationName]_[parentKeyName]
-        String parentKeyName = parentKeys.keySet().iterator().next();
-        return associationName + "_" + parentKeyName;
+        return null;
     }
 }
@@ -0,0 +1,244 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.reflect.CdsAssociationType;
+import com.sap.cds.reflect.CdsElement;
+import com.sap.cds.reflect.CdsEntity;
+import com.sap.cds.reflect.CdsModel;
+import com.sap.cds.services.runtime.CdsRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable registry of precomputed soft delete metadata, keyed by qualified entity name.
+ * The registry is built once per CdsModel so that the DELETE and READ hot paths
+ * only do map lookups instead of streaming over entity elements and annotations.
+ * Registries are cached per model identity (see {@link ModelScopedCache}), so that tenants with
+ * their own (extended) model never share metadata, and only hold their model weakly.
+ */
+public final class EntityMetadataRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(EntityMetadataRegistry.class);
+
+    private static final ModelScopedCache<EntityMetadataRegistry> registries =
+        new ModelScopedCache<>(EntityMetadataRegistry::build);
+
+    private final WeakReference<CdsModel> model;
+    private final Map<String, EntityMetadata> entities;
+    private final Map<String, List<String>> asyncCascadeGuards;
+    private final Map<String, CascadePlan> cascadePlans;
+    private final Map<String, CascadePlan> purgePlans = new ConcurrentHashMap<>();
+    private volatile Long parentStateCacheTtlMillis;
+
+    private EntityMetadataRegistry(CdsModel model, Map<String, EntityMetadata> entities) {
+        this.model = new WeakReference<>(model);
+        this.entities = Collections.unmodifiableMap(entities);
+        this.asyncCascadeGuards = Collections.unmodifiableMap(collectAsyncCascadeGuards(entities));
+        this.cascadePlans = Collections.unmodifiableMap(compileCascadePlans());
+    }
+
+    /**
+     * Returns the registry for the given model, building it if the model has not been seen before.
+     */
+    public static EntityMetadataRegistry forModel(CdsModel model) {
+        return registries.get(model);
+    }
+
+    /**
+     * Returns the statistics of the registry cache: number of models, hits, misses and build time.
+     */
+    public static ModelScopedCache.Stats cacheStats() {
+        return registries.stats();
+    }
+
+    /**
+     * Builds a new registry by scanning all entities of the model.
+     */
+    public static EntityMetadataRegistry build(CdsModel model) {
+        long start = System.nanoTime();
+        Map<String, EntityMetadata> entities = new HashMap<>();
+        model.entities().forEach(entity -> entities.put(entity.getQualifiedName(), createMetadata(entity)));
+        logger.debug("Built soft delete metadata registry for {} entities in {} µs",
+            entities.size(), (System.nanoTime() - start) / 1000);
+        return new EntityMetadataRegistry(model, entities);
+    }
+
+    /**
+     * Returns the metadata of an entity, or null if the entity is not part of the model.
+     */
+    public EntityMetadata get(String qualifiedName) {
+        return entities.get(qualifiedName);
+    }
+
+    /**
+     * Returns the metadata of an entity, or null if the entity is null or not part of the model.
+     */
+    public EntityMetadata get(CdsEntity entity) {
+        return entity != null ? entities.get(entity.getQualifiedName()) : null;
+    }
+
+    /**
+     * Checks if the given entity is soft-delete enabled.
+     */
+    public boolean isSoftDeleteEnabled(String qualifiedName) {
+        EntityMetadata metadata = entities.get(qualifiedName);
+        return metadata != null && metadata.isSoftDeleteEnabled();
+    }
+
+    /**
+     * Returns all entity metadata in the registry.
+     */
+    public Collection<EntityMetadata> entities() {
+        return entities.values();
+    }
+
+    /**
+     * Returns the database entity names of an entity and all soft-delete enabled entities
+     * reachable from it through compositions.
+     */
+    public Set<String> getCompositionTreeDbEntityNames(EntityMetadata root) {
+        Set<String> visited = new HashSet<>();
+        Set<String> dbEntityNames = new LinkedHashSet<>();
+        Deque<EntityMetadata> pending = new ArrayDeque<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            EntityMetadata entity = pending.poll();
+            if (!visited.add(entity.getQualifiedName())) {
+                continue;
+            }
+            dbEntityNames.add(entity.getDbEntityName());
+            for (CompositionMetadata composition : entity.getCompositions()) {
+                EntityMetadata child = get(composition.getTargetEntityName());
+                if (child != null && child.isSoftDeleteEnabled()) {
+                    pending.add(child);
+                }
+            }
+        }
+        return dbEntityNames;
+    }
+
+    /**
+     * Returns the isDeleted paths of the ancestors of an entity that cascade asynchronously
+     * (e.g. "order.isDeleted" for OrderItems of an Orders entity with @softdelete.cascade: 'async').
+     * Until the background cascade has finished, children are only hidden through these paths.
+     */
+    public List<String> getAsyncCascadeGuards(EntityMetadata entity) {
+        return asyncCascadeGuards.getOrDefault(entity.getQualifiedName(), Collections.emptyList());
+    }
+
+    /**
+     * Returns the precompiled cascade plan of an entity.
+     */
+    public CascadePlan getCascadePlan(EntityMetadata entity) {
+        CascadePlan plan = cascadePlans.get(entity.getQualifiedName());
+        return plan != null ? plan : CascadePlan.compile(this, entity);
+    }
+
+    /**
+     * Returns the plan of all composition children of an entity, including those that are not soft-delete
+     * enabled (see {@link CascadePlan#compileAllCompositions}). Plans are compiled on first use.
+     */
+    public CascadePlan getPurgePlan(EntityMetadata entity) {
+        return purgePlans.computeIfAbsent(entity.getQualifiedName(),
+            name -> CascadePlan.compileAllCompositions(this, entity));
+    }
+
+    /**
+     * Returns the time-to-live of the shared parent state cache (see
+     * {@link SoftDeleteConfig#getParentStateCacheTtlMillis}). It is read from the environment once per model,
+     * as it is needed on every by-key and navigation read.
+     */
+    public long getParentStateCacheTtlMillis(CdsRuntime runtime) {
+        Long ttlMillis = parentStateCacheTtlMillis;
+        if (ttlMillis == null) {
+            ttlMillis = SoftDeleteConfig.getParentStateCacheTtlMillis(runtime);
+            parentStateCacheTtlMillis = ttlMillis;
+        }
+        return ttlMillis;
+    }
+
+    /**
+     * The model the registry was built for, or null if the model is no longer in use.
+     */
+    public CdsModel getModel() {
+        return model.get();
+    }
+
+    private Map<String, CascadePlan> compileCascadePlans() {
+        Map<String, CascadePlan> plans = new HashMap<>();
+        for (EntityMetadata entity : entities.values()) {
+            if (entity.isSoftDeleteEnabled() && !entity.getCompositions().isEmpty()) {
+                CascadePlan plan = CascadePlan.compile(this, entity);
+                plans.put(entity.getQualifiedName(), plan);
+                logger.trace("Cascade plan of {}:\n{}", entity.getQualifiedName(), plan);
+            }
+        }
+        return plans;
+    }
+
+    private static Map<String, List<String>> collectAsyncCascadeGuards(Map<String, EntityMetadata> entities) {
+        Map<String, List<String>> guards = new HashMap<>();
+        for (EntityMetadata root : entities.values()) {
+            if (root.isAsyncCascade() && root.isSoftDeleteEnabled()) {
+                collectAsyncCascadeGuards(entities, root, "", new HashSet<>(Set.of(root.getQualifiedName())), guards);
+            }
+        }
+        return guards;
+    }
+
+    private static void collectAsyncCascadeGuards(Map<String, EntityMetadata> entities, EntityMetadata parent,
+                                                  String pathToParent, Set<String> visited,
+                                                  Map<String, List<String>> guards) {
+        for (CompositionMetadata composition : parent.getCompositions()) {
+            EntityMetadata child = entities.get(composition.getTargetEntityName());
+            if (child == null || !child.isSoftDeleteEnabled() || composition.getBackAssociationName() == null
+                || !visited.add(child.getQualifiedName())) {
+                continue;
+            }
+            String pathToChildParent = composition.getBackAssociationName() + "." + pathToParent;
+            guards.computeIfAbsent(child.getQualifiedName(), name -> new ArrayList<>())
+                .add(pathToChildParent + "isDeleted");
+            collectAsyncCascadeGuards(entities, child, pathToChildParent, visited, guards);
+            visited.remove(child.getQualifiedName());
+        }
+    }
+
+    private static EntityMetadata createMetadata(CdsEntity entity) {
+        List<String> keyNames = EntityMetadataHelper.getEntityKeyNames(entity);
+
+        List<CompositionMetadata> compositions = new ArrayList<>();
+        for (CdsElement element : EntityMetadataHelper.getCompositionElements(entity)) {
+            compositions.add(createCompositionMetadata(element, keyNames));
+        }
+
+        Map<String, String> associationTargets = new HashMap<>();
+        entity.elements()
+            .filter(element -> element.getType().isAssociation())
+            .forEach(element -> associationTargets.put(element.getName(),
+                ((CdsAssociationType) element.getType()).getTarget().getQualifiedName()));
+
+        return new EntityMetadata(
+            entity.getQualifiedName(),
+            EntityMetadataHelper.getDbEntityName(entity),
+            EntityMetadataHelper.isSoftDeleteEnabled(entity),
+            EntityMetadataHelper.isDraftEntity(entity),
+            EntityMetadataHelper.isDraftRootEntity(entity),
+            EntityMetadataHelper.isAsyncCascade(entity),
+            EntityMetadataHelper.getRetention(entity),
+            keyNames,
+            compositions,
+            associationTargets);
+    }
+
+    private static CompositionMetadata createCompositionMetadata(CdsElement element, List<String> parentKeyNames) {
+        CdsEntity targetEntity = ((CdsAssociationType) element.getType()).getTarget();
+        String backAssociationName = EntityMetadataHelper.findBackAssociationName(element);
+        List<String> foreignKeyNames = EntityMetadataHelper.extractForeignKeyNames(element, parentKeyNames);
+
+        return new CompositionMetadata(element.getName(), targetEntity.getQualifiedName(),
+            backAssociationName, foreignKeyNames);
+    }
+}
@@ -2,6 +2,7 @@ package io.github.miyasuta.util;
 
 import com.sap.cds.Result;
 import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Expand;
 import com.sap.cds.ql.Predicate;
 import com.sap.cds.ql.Select;
 import com.sap.cds.ql.cqn.*;
@@ -28,6 +29,25 @@ public class ExpandFilterBuilder {
      * Adds isDeleted filter to expand items if the target entity is soft-delete enabled.
      */
     public static CqnSelectListItem addFilterToExpandItem(CqnSelectListItem item, CdsModel model, CdsEntity parentEntity, Boolean expandIsDeletedValue) {
+        EntityMetadataRegistry registry = EntityMetadataRegistry.forModel(model);
+        return addFilterToExpandItem(item, registry, registry.get(parentEntity), expandIsDeletedValue);
+    }
+
+    /**
+     * Adds isDeleted filter to expand items if the target entity is soft-delete enabled.
+     * Resolves association targets through the precomputed metadata registry.
+     */
+    public static CqnSelectListItem addFilterToExpandItem(CqnSelectListItem item, EntityMetadataRegistry registry,
+                                                          EntityMetadata parentEntity, Boolean expandIsDeletedValue) {
+        return addFilterToExpandItem(item, registry, parentEntity, isDeletedEquals(expandIsDeletedValue));
+    }
+
+    /**
+     * Adds the given soft delete filter to expand items if the target entity is soft-delete enabled.
+     * The filter refers to the isDeleted element of the expanded entity.
+     */
+    public static CqnSelectListItem addFilterToExpandItem(CqnSelectListItem item, EntityMetadataRegistry registry,
+                                                          EntityMetadata parentEntity, Predicate softDeleteFilter) {
         if (!item.isExpand()) {
             return item;
         }
@@ -36,16 +56,17 @@ public class ExpandFilterBuilder {
         String associationName = expand.ref().lastSegment();
 
         // Find the target entity through the association in the parent entity
-        CdsEntity targetEntity = EntityMetadataHelper.findTargetEntity(parentEntity, associationName);
+        EntityMetadata targetEntity = parentEntity != null
+            ? registry.get(parentEntity.getAssociationTarget(associationName)) : null;
 
         // Process nested items recursively (with the new target entity as parent)
-        final CdsEntity finalTargetEntity = targetEntity;
+        final EntityMetadata finalTargetEntity = targetEntity;
         List<CqnSelectListItem> nestedItems = expand.items().stream()
-            .map(nestedItem -> addFilterToExpandItem(nestedItem, model, finalTargetEntity, expandIsDeletedValue))
+            .map(nestedItem -> addFilterToExpandItem(nestedItem, registry, finalTargetEntity, softDeleteFilter))
             .collect(Collectors.toList());
 
         // Determine if we need to add the soft delete filter
-        boolean needsSoftDeleteFilter = targetEntity != null && EntityMetadataHelper.isSoftDeleteEnabled(targetEntity);
+        boolean needsSoftDeleteFilter = targetEntity != null && targetEntity.isSoftDeleteEnabled();
 
         // If no changes needed, return original item
         if (!needsSoftDeleteFilter && nestedItems.equals(expand.items())) {
@@ -53,64 +74,175 @@ public class ExpandFilterBuilder {
         }
 
         if (needsSoftDeleteFilter) {
-            logger.debug("Adding soft delete filter to expand: {} with isDeleted={}", associationName, expandIsDeletedValue);
+            logger.debug("Adding soft delete filter to expand: {} with {}", associationName, softDeleteFilter);
         }
 
         // Build the filter
         CqnPredicate existingFilter = expand.ref().targetSegment().filter().orElse(null);
         Predicate newFilter = existingFilter != null ? (Predicate) existingFilter : null;
 
-        if (needsSoftDeleteFilter && expandIsDeletedValue != null) {
-            Predicate softDeleteFilter = CQL.get(FIELD_IS_DELETED).eq(expandIsDeletedValue);
-            newFilter = newFilter != null ? CQL.and(newFilter, softDeleteFilter) : softDeleteFilter;
+        if (needsSoftDeleteFilter && softDeleteFilter != null) {
+            // Also hide not deleted rows whose async cascade is still pending, whatever the parent state mode
+            Predicate targetFilter = pendingCascadeGuardFilter(registry, targetEntity, softDeleteFilter);
+            newFilter = newFilter != null ? CQL.and(newFilter, targetFilter) : targetFilter;
         }
 
-        // Create new expand using CQL.to().expand()
-        var toExpand = CQL.to(associationName);
-        if (newFilter != null) {
-            toExpand = toExpand.filter(newFilter);
-        }
-
-        return nestedItems.isEmpty()
+        // Create new expand on the same path, with the new filter on the target segment
+        List<CqnReference.Segment> segments = new ArrayList<>(expand.ref().segments());
+        segments.set(segments.size() - 1,
+            newFilter != null ? CQL.refSegment(associationName, newFilter) : CQL.refSegment(associationName));
+        var toExpand = CQL.to(segments);
+        var newExpand = nestedItems.isEmpty()
             ? toExpand.expand()
             : toExpand.expand(nestedItems.toArray(new CqnSelectListItem[0]));
+        return copyExpandOptions(expand, newExpand);
     }
 
     /**
-     * Gets the isDeleted value from the parent entity for by-key access.
+     * Copies the options of an expand that the rewrite does not change ($top, $skip, $orderby, $count and alias),
+     * so that paginated and ordered expands stay paginated and ordered in the database.
      */
-    public static Boolean getParentIsDeletedValue(CdsReadEventContext context, CqnSelect select, CdsEntity entity) {
-        try {
-            // Extract keys from the select statement
-            CdsModel model = context.getModel();
-            CqnAnalyzer analyzer = CqnAnalyzer.create(model);
-            AnalysisResult analysisResult = analyzer.analyze(select.ref());
-            Map<String, Object> keys = new HashMap<>(analysisResult.rootKeys());
-            EntityMetadataHelper.removeDraftKeys(keys);
+    private static Expand<?> copyExpandOptions(CqnExpand original, Expand<?> expand) {
+        if (original.hasLimit()) {
+            expand.limit(original.top(), original.skip());
+        }
+        if (!original.orderBy().isEmpty()) {
+            expand.orderBy(original.orderBy());
+        }
+        if (original.hasInlineCount()) {
+            expand.inlineCount();
+        }
+        original.alias().ifPresent(expand::as);
+        return expand;
+    }
 
-            if (keys.isEmpty()) {
-                return false;
-            }
+    /**
+     * Returns the filter "isDeleted = value", or null if the value is null.
+     */
+    public static Predicate isDeletedEquals(Boolean isDeletedValue) {
+        return isDeletedValue != null ? CQL.get(FIELD_IS_DELETED).eq(isDeletedValue) : null;
+    }
+
+    /**
+     * Returns true if the filter is "isDeleted = false", i.e. selects non-deleted rows only.
+     */
+    public static boolean isNotDeletedFilter(CqnPredicate filter) {
+        return isDeletedComparison(filter, false);
+    }
 
-            String dbEntityName = EntityMetadataHelper.getDbEntityName(entity);
+    private static boolean isDeletedComparison(CqnPredicate filter, boolean value) {
+        if (!(filter instanceof CqnComparisonPredicate)) {
+            return false;
+        }
+        CqnComparisonPredicate comparison = (CqnComparisonPredicate) filter;
+        return comparison.operator() == CqnComparisonPredicate.Operator.EQ
+            && comparison.left().isRef()
+            && comparison.left().asRef().segments().size() == 1
+            && FIELD_IS_DELETED.equals(comparison.left().asRef().lastSegment())
+            && comparison.right().isLiteral()
+            && Boolean.valueOf(value).equals(comparison.right().asLiteral().value());
+    }
 
-            // Query the parent's isDeleted value
-            CqnSelect parentQuery = Select.from(dbEntityName)
-                .columns(CQL.get(FIELD_IS_DELETED))
-                .matching(keys);
+    /**
+     * Adds "ancestor.isDeleted = false" conditions for ancestors with @softdelete.cascade: 'async',
+     * so that children stay hidden while the background cascade has not reached them yet.
+     */
+    public static Predicate asyncCascadeGuardFilter(EntityMetadataRegistry registry, EntityMetadata entity,
+                                                    Predicate filter) {
+        Predicate result = filter;
+        for (String guardPath : registry.getAsyncCascadeGuards(entity)) {
+            Predicate guard = CQL.get(guardPath).eq(false);
+            result = result != null ? CQL.and(result, guard) : guard;
+        }
+        return result;
+    }
 
-            PersistenceService db = context.getServiceCatalog()
-                .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
-            Result result = db.run(parentQuery);
+    /**
+     * Adds the async cascade guards of the entity to a soft delete filter of any form (e.g. the inline parent
+     * state filter): rows that are not deleted must also have no ancestor with a pending async cascade, i.e.
+     * "filter AND (isDeleted = true OR ancestor.isDeleted = false ...)". For the plain "isDeleted = false"
+     * filter this is simplified to {@link #asyncCascadeGuardFilter}.
+     */
+    public static Predicate pendingCascadeGuardFilter(EntityMetadataRegistry registry, EntityMetadata entity,
+                                                      Predicate filter) {
+        if (filter == null || registry.getAsyncCascadeGuards(entity).isEmpty() || isDeletedComparison(filter, true)) {
+            return filter;
+        }
+        if (isNotDeletedFilter(filter)) {
+            return asyncCascadeGuardFilter(registry, entity, filter);
+        }
+        Predicate guards = asyncCascadeGuardFilter(registry, entity, null);
+        return CQL.and(filter, CQL.or(CQL.get(FIELD_IS_DELETED).eq(true), guards));
+    }
 
-            if (result.rowCount() > 0) {
-                Object isDeletedObj = result.single().get(FIELD_IS_DELETED);
-                if (isDeletedObj instanceof Boolean) {
-                    return (Boolean) isDeletedObj;
+    /**
+     * Gets a filter that matches the parent's isDeleted value for by-key access (used for expands).
+     * Depending on "cds.softdelete.read.parentState", the parent's value is either queried up front
+     * or resolved by the database within the main statement.
+     */
+    public static Predicate getParentIsDeletedFilter(CdsReadEventContext context, CqnSelect select, EntityMetadata entity) {
+        if (SoftDeleteConfig.getParentStateMode(context.getCdsRuntime()) == SoftDeleteConfig.ParentStateMode.INLINE) {
+            try {
+                Map<String, Object> keys = extractByKeyParentKeys(context, select);
+                if (!keys.isEmpty()) {
+                    return inlineParentIsDeletedFilter(entity.getDbEntityName(), keys);
                 }
+            } catch (Exception e) {
+                logger.warn("Failed to build inline parent isDeleted filter, defaulting to false", e);
             }
+            return isDeletedEquals(false);
+        }
+        return isDeletedEquals(getParentIsDeletedValue(context, select, entity));
+    }
 
-            return false;
+    /**
+     * Gets a filter that matches the parent's isDeleted value in a navigation path
+     * (e.g. Orders(ID=...)/items), either by querying the parent up front or inline.
+     */
+    public static Predicate getParentIsDeletedFilterFromNavigation(CdsReadEventContext context, CqnSelect select,
+                                                                   EntityMetadataRegistry registry) {
+        if (SoftDeleteConfig.getParentStateMode(context.getCdsRuntime()) == SoftDeleteConfig.ParentStateMode.INLINE) {
+            try {
+                EntityMetadata parentEntity = registry.get(select.ref().rootSegment().id());
+                Map<String, Object> parentKeys = extractNavigationParentKeys(select, registry, parentEntity);
+                if (!parentKeys.isEmpty()) {
+                    return inlineParentIsDeletedFilter(parentEntity.getDbEntityName(), parentKeys);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to build inline parent isDeleted filter from navigation, defaulting to false", e);
+            }
+            return isDeletedEquals(false);
+        }
+        return isDeletedEquals(getParentIsDeletedValueFromNavigation(context, select, registry));
+    }
+
+    /**
+     * Builds a filter that matches rows whose isDeleted equals the isDeleted value of the given parent,
+     * without a separate query:
+     * (isDeleted = true AND EXISTS deleted parent) OR (isDeleted = false AND NOT EXISTS deleted parent).
+     * Like the queried variant, a missing parent counts as not deleted.
+     */
+    public static Predicate inlineParentIsDeletedFilter(String parentDbEntityName, Map<String, Object> parentKeys) {
+        CqnSelect deletedParent = Select.from(parentDbEntityName)
+            .columns(CQL.get(FIELD_IS_DELETED))
+            .where(CQL.and(CQL.matching(parentKeys), CQL.get(FIELD_IS_DELETED).eq(true)));
+
+        return CQL.or(
+            CQL.and(CQL.get(FIELD_IS_DELETED).eq(true), CQL.exists(deletedParent)),
+            CQL.and(CQL.get(FIELD_IS_DELETED).eq(false), CQL.not(CQL.exists(deletedParent))));
+    }
+
+    /**
+     * Gets the isDeleted value from the parent entity for by-key access.
+     */
+    public static Boolean getParentIsDeletedValue(CdsReadEventContext context, CqnSelect select, EntityMetadata entity) {
+        try {
+            Map<String, Object> keys = extractByKeyParentKeys(context, select);
+            if (keys.isEmpty()) {
+                return false;
+            }
+
+            return queryIsDeletedValue(context, entity.getDbEntityName(), keys);
         } catch (Exception e) {
             logger.warn("Failed to get parent isDeleted value, defaulting to false", e);
             return false;
@@ -121,59 +253,91 @@ public class ExpandFilterBuilder {
      * Gets the isDeleted value from the parent entity in a navigation path.
      * For queries like Orders(ID=...,IsActiveEntity=true)/items, this queries the Order's isDeleted value.
      */
-    public static Boolean getParentIsDeletedValueFromNavigation(CdsReadEventContext context, CqnSelect select, CdsModel model) {
+    public static Boolean getParentIsDeletedValueFromNavigation(CdsReadEventContext context, CqnSelect select,
+                                                                EntityMetadataRegistry registry) {
         try {
-            // Get the parent segment (first segment in the navigation path)
-            var rootSegment = select.ref().rootSegment();
-            String parentEntityName = rootSegment.id();
-
-            // Get the parent entity
-            CdsEntity parentEntity = model.getEntity(parentEntityName);
-            if (parentEntity == null || !EntityMetadataHelper.isSoftDeleteEnabled(parentEntity)) {
+            // Get the parent entity (first segment in the navigation path)
+            EntityMetadata parentEntity = registry.get(select.ref().rootSegment().id());
+            Map<String, Object> parentKeys = extractNavigationParentKeys(select, registry, parentEntity);
+            if (parentKeys.isEmpty()) {
                 return false;
             }
 
-            // Extract parent keys from the root segment filter
-            if (!rootSegment.filter().isPresent()) {
-                return false;
-            }
+            return queryIsDeletedValue(context, parentEntity.getDbEntityName(), parentKeys);
+        } catch (Exception e) {
+            logger.warn("Failed to get parent isDeleted value from navigation, defaulting to false", e);
+            return false;
+        }
+    }
 
-            // Use CqnAnalyzer to extract keys from the parent segment
-            CqnAnalyzer analyzer = CqnAnalyzer.create(model);
-            AnalysisResult analysisResult = analyzer.analyze(select.ref());
-            Map<String, Object> allKeys = new HashMap<>(analysisResult.rootKeys());
+    /**
+     * Extracts the keys of the accessed entity for by-key access, without draft keys.
+     */
+    private static Map<String, Object> extractByKeyParentKeys(CdsReadEventContext context, CqnSelect select) {
+        CqnAnalyzer analyzer = CqnAnalyzer.create(context.getModel());
+        AnalysisResult analysisResult = analyzer.analyze(select.ref());
+        Map<String, Object> keys = new HashMap<>(analysisResult.rootKeys());
+        EntityMetadataHelper.removeDraftKeys(keys);
+        return keys;
+    }
 
-            // Filter to get only parent entity keys
-            Map<String, Object> parentKeys = EntityMetadataHelper.filterKeysForEntity(allKeys, parentEntity);
-            EntityMetadataHelper.removeDraftKeys(parentKeys);
+    /**
+     * Extracts the keys of the parent (root segment) of a navigation path, without draft keys.
+     * Returns an empty map if the parent is not soft-delete enabled or has no key filter.
+     */
+    private static Map<String, Object> extractNavigationParentKeys(CqnSelect select, EntityMetadataRegistry registry,
+                                                                   EntityMetadata parentEntity) {
+        if (parentEntity == null || !parentEntity.isSoftDeleteEnabled()) {
+            return Collections.emptyMap();
+        }
 
-            if (parentKeys.isEmpty()) {
-                return false;
-            }
+        // Extract parent keys from the root segment filter
+        if (!select.ref().rootSegment().filter().isPresent()) {
+            return Collections.emptyMap();
+        }
 
-            // Get the database entity name for the parent
-            String dbEntityName = EntityMetadataHelper.getDbEntityName(parentEntity);
+        // Use CqnAnalyzer to extract keys from the parent segment
+        CqnAnalyzer analyzer = CqnAnalyzer.create(registry.getModel());
+        AnalysisResult analysisResult = analyzer.analyze(select.ref());
+        Map<String, Object> allKeys = new HashMap<>(analysisResult.rootKeys());
 
-            // Query the parent's isDeleted value
-            CqnSelect parentQuery = Select.from(dbEntityName)
-                .columns(CQL.get(FIELD_IS_DELETED))
-                .matching(parentKeys);
+        // Filter to get only parent entity keys
+        Map<String, Object> parentKeys = EntityMetadataHelper.filterKeys(allKeys, parentEntity.getKeyNames());
+        EntityMetadataHelper.removeDraftKeys(parentKeys);
+        return parentKeys;
+    }
 
-            PersistenceService db = context.getServiceCatalog()
-                .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
-            Result result = db.run(parentQuery);
+    /**
+     * Queries the isDeleted value of a parent entity instance, using the parent state cache.
+     */
+    private static Boolean queryIsDeletedValue(CdsReadEventContext context, String dbEntityName,
+                                               Map<String, Object> keys) {
+        long start = System.nanoTime();
+        Boolean cached = ParentStateCache.get(context, dbEntityName, keys);
+        if (cached != null) {
+            SoftDeleteMetrics.get().parentStateLookup(dbEntityName, true, System.nanoTime() - start);
+            return cached;
+        }
 
-            if (result.rowCount() > 0) {
-                Object isDeletedObj = result.single().get(FIELD_IS_DELETED);
-                if (isDeletedObj instanceof Boolean) {
-                    return (Boolean) isDeletedObj;
-                }
-            }
+        // Query the parent's isDeleted value
+        CqnSelect parentQuery = Select.from(dbEntityName)
+            .columns(CQL.get(FIELD_IS_DELETED))
+            .matching(keys);
 
-            return false;
-        } catch (Exception e) {
-            logger.warn("Failed to get parent isDeleted value from navigation, defaulting to false", e);
-            return false;
+        PersistenceService db = context.getServiceCatalog()
+            .getService(PersistenceService.class, PersistenceService.DEFAULT_NAME);
+        Result result = db.run(parentQuery);
+
+        Boolean isDeleted = false;
+        if (result.rowCount() > 0) {
+            Object isDeletedObj = result.single().get(FIELD_IS_DELETED);
+            if (isDeletedObj instanceof Boolean) {
+                isDeleted = (Boolean) isDeletedObj;
+            }
         }
+
+        ParentStateCache.put(context, dbEntityName, keys, isDeleted);
+        SoftDeleteMetrics.get().parentStateLookup(dbEntityName, false, System.nanoTime() - start);
+        return isDeleted;
     }
 }
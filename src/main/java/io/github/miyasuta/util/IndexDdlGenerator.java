@@ -0,0 +1,167 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.reflect.CdsModel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Generates CREATE INDEX statements for the predicates that the soft delete handlers add:
+ * <ul>
+ *   <li>isDeleted = false on list reads (partial index on the keys, only where the dialect supports it)</li>
+ *   <li>fk = ? AND isDeleted = false on cascades and expands (composite index per composition foreign key)</li>
+ *   <li>isDeleted = true AND deletedAt &lt; ? on purges (only for entities with @softdelete.retention)</li>
+ * </ul>
+ * Without partial indexes, no list read index is generated: a full index on a low-selectivity flag
+ * does not make scans of the table cheaper.
+ * Table names follow CAP's default (plain) naming. The script is meant to be reviewed and added to the
+ * project's schema migration, e.g. with:
+ * <pre>java -cp ... io.github.miyasuta.util.IndexDdlGenerator gen/srv/src/main/resources/edmx/csn.json postgresql indexes.sql</pre>
+ */
+public class IndexDdlGenerator {
+
+    private static final String FIELD_IS_DELETED = "isDeleted";
+    private static final String FIELD_DELETED_AT = "deletedAt";
+    private static final int MAX_INDEX_NAME_LENGTH = 63;
+
+    /**
+     * Target database of the generated DDL.
+     */
+    public enum Dialect {
+        H2(false),
+        SQLITE(true),
+        POSTGRESQL(true),
+        HANA(false);
+
+        private final boolean partialIndexes;
+
+        Dialect(boolean partialIndexes) {
+            this.partialIndexes = partialIndexes;
+        }
+
+        /**
+         * True if the dialect supports partial indexes (CREATE INDEX ... WHERE).
+         */
+        public boolean supportsPartialIndexes() {
+            return partialIndexes;
+        }
+    }
+
+    /**
+     * Generates the index DDL for all soft-delete enabled database entities of the model.
+     */
+    public static String generate(CdsModel model, Dialect dialect) {
+        return generate(EntityMetadataRegistry.forModel(model), dialect);
+    }
+
+    /**
+     * Generates the index DDL for all soft-delete enabled database entities of the registry.
+     */
+    public static String generate(EntityMetadataRegistry registry, Dialect dialect) {
+        // Index name -> statement, so that projections of the same table do not produce duplicates
+        Map<String, String> statements = new TreeMap<>();
+
+        for (EntityMetadata entity : registry.entities()) {
+            if (!entity.isSoftDeleteEnabled()) {
+                continue;
+            }
+            String table = tableName(entity.getDbEntityName());
+
+            // List reads: isDeleted = false, as a partial index next to the partial purge index
+            if (dialect.supportsPartialIndexes() && !entity.getKeyNames().isEmpty()) {
+                addIndex(statements, dialect, table, "active", entity.getKeyNames(), FIELD_IS_DELETED + " = false");
+            }
+
+            // Purge: isDeleted = true AND deletedAt < ?
+            if (entity.getRetention() != null) {
+                if (dialect.supportsPartialIndexes()) {
+                    addIndex(statements, dialect, table, "purge", List.of(FIELD_DELETED_AT), FIELD_IS_DELETED + " = true");
+                } else {
+                    addIndex(statements, dialect, table, "purge", List.of(FIELD_IS_DELETED, FIELD_DELETED_AT), null);
+                }
+            }
+
+            // Cascades and expands: fk = ? AND isDeleted = false (deleted children are read by fk as well)
+            for (CompositionMetadata composition : entity.getCompositions()) {
+                EntityMetadata child = registry.get(composition.getTargetEntityName());
+                if (child == null || !child.isSoftDeleteEnabled() || composition.getForeignKeyNames().isEmpty()) {
+                    continue;
+                }
+                List<String> columns = new ArrayList<>(composition.getForeignKeyNames());
+                columns.add(FIELD_IS_DELETED);
+                addIndex(statements, dialect, tableName(child.getDbEntityName()),
+                    String.join("_", composition.getForeignKeyNames()), columns, null);
+            }
+        }
+
+        StringBuilder ddl = new StringBuilder();
+        ddl.append("-- Soft delete indexes for ").append(dialect.name().toLowerCase(Locale.ROOT))
+            .append(", generated by cds-feature-softdelete\n");
+        statements.values().forEach(statement -> ddl.append(statement).append(";\n"));
+        return ddl.toString();
+    }
+
+    /**
+     * Writes the index DDL of a compiled CSN model: IndexDdlGenerator &lt;csn.json&gt; &lt;dialect&gt; [output file].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: IndexDdlGenerator <csn.json> <h2|sqlite|postgresql|hana> [output file]");
+            System.exit(1);
+        }
+        CdsModel model;
+        try (InputStream csn = Files.newInputStream(Paths.get(args[0]))) {
+            model = CdsModel.read(csn);
+        }
+        String ddl = generate(model, Dialect.valueOf(args[1].trim().toUpperCase(Locale.ROOT)));
+        if (args.length > 2) {
+            write(Paths.get(args[2]), ddl);
+        } else {
+            System.out.print(ddl);
+        }
+    }
+
+    /**
+     * Writes the DDL to a file, creating missing parent directories.
+     */
+    public static void write(Path file, String ddl) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, ddl.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void addIndex(Map<String, String> statements, Dialect dialect, String table, String suffix,
+                                 List<String> columns, String where) {
+        String indexName = indexName(table, suffix);
+        StringBuilder statement = new StringBuilder("CREATE INDEX ");
+        if (dialect != Dialect.HANA) {
+            statement.append("IF NOT EXISTS ");
+        }
+        statement.append(indexName).append(" ON ").append(table)
+            .append(" (").append(String.join(", ", columns)).append(")");
+        if (where != null) {
+            statement.append(" WHERE ").append(where);
+        }
+        statements.putIfAbsent(indexName, statement.toString());
+    }
+
+    private static String tableName(String dbEntityName) {
+        return dbEntityName.replace('.', '_');
+    }
+
+    private static String indexName(String table, String suffix) {
+        String name = table + "_sd_" + suffix;
+        if (name.length() <= MAX_INDEX_NAME_LENGTH) {
+            return name;
+        }
+        // Keep index names within PostgreSQL's identifier limit, but unique
+        String hash = Integer.toHexString(name.hashCode());
+        return name.substring(0, MAX_INDEX_NAME_LENGTH - hash.length() - 1) + "_" + hash;
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Predicate;
+import com.sap.cds.ql.Select;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.ql.cqn.CqnValue;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Builds predicates that match rows by (possibly composite) keys.
+ * Columns are aligned with key names by position, so that the same helpers match a parent's keys
+ * (columns = key names) and its children's foreign keys (columns = foreign key names, e.g. "order_tenant", "order_ID").
+ * Single-column keys use a plain IN; composite keys use tuple IN, e.g. (order_tenant, order_ID) IN (...).
+ */
+public class KeyPredicates {
+
+    /**
+     * Matches the rows whose columns equal the given key values.
+     */
+    public static Predicate matching(List<String> columns, List<String> keyNames, Map<String, Object> keys) {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            values.put(columns.get(i), keys.get(keyNames.get(i)));
+        }
+        return CQL.matching(values);
+    }
+
+    /**
+     * Matches the rows whose columns equal one of the given keys.
+     */
+    public static Predicate in(List<String> columns, List<String> keyNames, Collection<Map<String, Object>> keys) {
+        if (columns.size() == 1) {
+            String keyName = keyNames.get(0);
+            return CQL.get(columns.get(0)).in(keys.stream().map(key -> key.get(keyName)).collect(Collectors.toList()));
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(keys.size());
+        for (Map<String, Object> key : keys) {
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                row.put(columns.get(i), key.get(keyNames.get(i)));
+            }
+            rows.add(row);
+        }
+        return CQL.in(columns, rows);
+    }
+
+    /**
+     * Matches the rows whose columns equal one of the rows returned by the subquery
+     * (which must select as many columns, in the same order).
+     */
+    public static Predicate in(List<String> columns, CqnSelect subquery) {
+        if (columns.size() == 1) {
+            return CQL.get(columns.get(0)).in(subquery);
+        }
+        List<CqnValue> values = columns.stream().map(CQL::get).collect(Collectors.toList());
+        return CQL.in(CQL.list(values), subquery);
+    }
+
+    /**
+     * Matches the rows whose key comes after the given key in key order, for keyset pagination:
+     * (k1 &gt; v1) OR (k1 = v1 AND k2 &gt; v2) OR ...
+     */
+    public static Predicate after(List<String> keyNames, Map<String, Object> lastKey) {
+        List<Predicate> alternatives = new ArrayList<>();
+        for (int i = 0; i < keyNames.size(); i++) {
+            List<Predicate> conditions = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                conditions.add(CQL.get(keyNames.get(j)).eq(lastKey.get(keyNames.get(j))));
+            }
+            conditions.add(CQL.get(keyNames.get(i)).gt(lastKey.get(keyNames.get(i))));
+            alternatives.add(conditions.size() == 1 ? conditions.get(0) : CQL.and(conditions));
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : CQL.or(alternatives);
+    }
+
+    /**
+     * Selects the given columns (usually the keys) of the rows of an entity matching the predicate.
+     */
+    public static CqnSelect keySelect(String entityName, List<String> keyNames, Predicate where) {
+        return Select.from(entityName)
+            .columns(keyNames.stream().map(CQL::get).collect(Collectors.toList()))
+            .where(where);
+    }
+
+    /**
+     * Extracts the key values of a row, in key order.
+     */
+    public static Map<String, Object> keys(Map<String, Object> row, List<String> keyNames) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (String keyName : keyNames) {
+            keys.put(keyName, row.get(keyName));
+        }
+        return keys;
+    }
+}
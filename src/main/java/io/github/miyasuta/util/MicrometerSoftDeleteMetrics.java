@@ -0,0 +1,126 @@
+package io.github.miyasuta.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records soft delete metrics with Micrometer. Only instantiated by {@link SoftDeleteMetrics#initialize}
+ * when Micrometer is on the classpath.
+ * <ul>
+ *   <li>cds.softdelete.deletes (counter; entity, kind=active|draft)</li>
+ *   <li>cds.softdelete.cascade.rows (counter; entity)</li>
+ *   <li>cds.softdelete.cascade.level (timer; entity)</li>
+ *   <li>cds.softdelete.draft.cancel (counter; entity, decision=soft|physical)</li>
+ *   <li>cds.softdelete.read.rewrites (counter; entity, outcome=applied|skipped)</li>
+ *   <li>cds.softdelete.read.rewrite.duration (timer; outcome)</li>
+ *   <li>cds.softdelete.read.parentState (timer; entity, source=cache|database)</li>
+ *   <li>cds.softdelete.purge.rows (counter; entity)</li>
+ * </ul>
+ */
+public class MicrometerSoftDeleteMetrics extends SoftDeleteMetrics {
+
+    private static final String TAG_ENTITY = "entity";
+
+    private final MeterRegistry registry;
+
+    // Meters are resolved once per entity and tag values, so that recording does not look up or allocate
+    private final Map<String, Counter> activeDeletes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> draftDeletes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cascadeRows = new ConcurrentHashMap<>();
+    private final Map<String, Timer> cascadeLevels = new ConcurrentHashMap<>();
+    private final Map<String, Counter> softDraftCancels = new ConcurrentHashMap<>();
+    private final Map<String, Counter> physicalDraftCancels = new ConcurrentHashMap<>();
+    private final Map<String, Counter> appliedReadRewrites = new ConcurrentHashMap<>();
+    private final Map<String, Counter> skippedReadRewrites = new ConcurrentHashMap<>();
+    private final Map<String, Timer> cachedParentStates = new ConcurrentHashMap<>();
+    private final Map<String, Timer> queriedParentStates = new ConcurrentHashMap<>();
+    private final Map<String, Counter> purgedRows = new ConcurrentHashMap<>();
+    private final Timer appliedReadRewriteDuration;
+    private final Timer skippedReadRewriteDuration;
+
+    public MicrometerSoftDeleteMetrics() {
+        this(Metrics.globalRegistry);
+    }
+
+    public MicrometerSoftDeleteMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.appliedReadRewriteDuration = registry.timer("cds.softdelete.read.rewrite.duration", "outcome", "applied");
+        this.skippedReadRewriteDuration = registry.timer("cds.softdelete.read.rewrite.duration", "outcome", "skipped");
+    }
+
+    @Override
+    public void softDeleted(String entityName, boolean draft) {
+        String kind = draft ? "draft" : "active";
+        counter(draft ? draftDeletes : activeDeletes, entityName, "cds.softdelete.deletes", "kind", kind).increment();
+    }
+
+    @Override
+    public void softDeleted(String entityName, boolean draft, long count) {
+        String kind = draft ? "draft" : "active";
+        counter(draft ? draftDeletes : activeDeletes, entityName, "cds.softdelete.deletes", "kind", kind)
+            .increment(count);
+    }
+
+    @Override
+    public void cascadeRowsUpdated(String entityName, long rows) {
+        counter(cascadeRows, entityName, "cds.softdelete.cascade.rows", null, null).increment(rows);
+    }
+
+    @Override
+    public void cascadeLevel(String entityName, long durationNanos) {
+        timer(cascadeLevels, entityName, "cds.softdelete.cascade.level", null, null)
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void draftCancelDecision(String entityName, boolean softDelete) {
+        counter(softDelete ? softDraftCancels : physicalDraftCancels, entityName, "cds.softdelete.draft.cancel",
+            "decision", softDelete ? "soft" : "physical").increment();
+    }
+
+    @Override
+    public void readRewrite(String entityName, boolean applied, long durationNanos) {
+        counter(applied ? appliedReadRewrites : skippedReadRewrites, entityName, "cds.softdelete.read.rewrites",
+            "outcome", applied ? "applied" : "skipped").increment();
+        (applied ? appliedReadRewriteDuration : skippedReadRewriteDuration)
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void parentStateLookup(String entityName, boolean cached, long durationNanos) {
+        timer(cached ? cachedParentStates : queriedParentStates, entityName, "cds.softdelete.read.parentState",
+            "source", cached ? "cache" : "database").record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void purgedRows(String entityName, long rows) {
+        counter(purgedRows, entityName, "cds.softdelete.purge.rows", null, null).increment(rows);
+    }
+
+    private Counter counter(Map<String, Counter> counters, String entityName, String name, String tag, String value) {
+        Counter counter = counters.get(entityName);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(entityName, entity -> registry.counter(name, tags(entity, tag, value)));
+        }
+        return counter;
+    }
+
+    private Timer timer(Map<String, Timer> timers, String entityName, String name, String tag, String value) {
+        Timer timer = timers.get(entityName);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(entityName, entity -> registry.timer(name, tags(entity, tag, value)));
+        }
+        return timer;
+    }
+
+    private static Tags tags(String entityName, String tag, String value) {
+        return tag != null ? Tags.of(TAG_ENTITY, entityName, tag, value) : Tags.of(TAG_ENTITY, entityName);
+    }
+}
@@ -0,0 +1,174 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.reflect.CdsModel;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caches one value per CdsModel, keyed by model identity with weak references.
+ * With CAP MTX each tenant (extension) can have its own model: values are built lazily the first time
+ * a model is seen, and are dropped once the model is no longer referenced (e.g. evicted by the model provider),
+ * so nothing is shared across models and nothing keeps an evicted model alive.
+ * Values must therefore not hold the model strongly. The most recently used model is served without locking.
+ */
+public final class ModelScopedCache<V> {
+
+    private final Function<CdsModel, V> loader;
+    private final Map<ModelKey, V> entries = new HashMap<>();
+    private final ReferenceQueue<CdsModel> collected = new ReferenceQueue<>();
+    private volatile Entry<V> last;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+
+    public ModelScopedCache(Function<CdsModel, V> loader) {
+        this.loader = loader;
+    }
+
+    private static final class ModelKey extends WeakReference<CdsModel> {
+        private final int hash;
+
+        private ModelKey(CdsModel model, ReferenceQueue<CdsModel> queue) {
+            super(model, queue);
+            this.hash = System.identityHashCode(model);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof ModelKey)) {
+                return false;
+            }
+            CdsModel model = get();
+            return model != null && model == ((ModelKey) other).get();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final WeakReference<CdsModel> model;
+        private final V value;
+
+        private Entry(CdsModel model, V value) {
+            this.model = new WeakReference<>(model);
+            this.value = value;
+        }
+    }
+
+    /**
+     * Returns the value of the model, building it if the model has not been seen before.
+     * The value is built outside the lock, so concurrent misses for the same model may build it more than once.
+     */
+    public V get(CdsModel model) {
+        Entry<V> entry = last;
+        if (entry != null && entry.model.get() == model) {
+            hits.incrementAndGet();
+            return entry.value;
+        }
+
+        V value;
+        synchronized (this) {
+            expungeCollected();
+            value = entries.get(new ModelKey(model, null));
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            long start = System.nanoTime();
+            value = loader.apply(model);
+            buildNanos.addAndGet(System.nanoTime() - start);
+            synchronized (this) {
+                V existing = entries.putIfAbsent(new ModelKey(model, collected), value);
+                value = existing != null ? existing : value;
+            }
+        }
+        last = new Entry<>(model, value);
+        return value;
+    }
+
+    /**
+     * Drops the values of all models.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        last = null;
+    }
+
+    /**
+     * Returns the hit/miss and build time statistics of the cache.
+     */
+    public Stats stats() {
+        int size;
+        synchronized (this) {
+            expungeCollected();
+            size = entries.size();
+        }
+        return new Stats(size, hits.get(), misses.get(), buildNanos.get());
+    }
+
+    private void expungeCollected() {
+        for (Object key; (key = collected.poll()) != null; ) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Snapshot of the statistics of a {@link ModelScopedCache}.
+     */
+    public static final class Stats {
+        private final int models;
+        private final long hits;
+        private final long misses;
+        private final long buildNanos;
+
+        private Stats(int models, long hits, long misses, long buildNanos) {
+            this.models = models;
+            this.hits = hits;
+            this.misses = misses;
+            this.buildNanos = buildNanos;
+        }
+
+        /**
+         * Number of models with a cached value.
+         */
+        public int getModels() {
+            return models;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of lookups that built a value, i.e. first lookups of a model.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Total time spent building values, in nanoseconds.
+         */
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "models=" + models + ", hits=" + hits + ", misses=" + misses
+                + ", buildMillis=" + buildNanos / 1_000_000;
+        }
+    }
+}
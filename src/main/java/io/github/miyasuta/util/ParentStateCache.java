@@ -0,0 +1,160 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.services.EventContext;
+import com.sap.cds.services.changeset.ChangeSetContext;
+import com.sap.cds.services.changeset.ChangeSetListener;
+import com.sap.cds.services.request.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Caches the isDeleted state of parent entities looked up for by-key and navigation reads.
+ * Entries are always scoped to the current request (e.g. all facets of a Fiori object page in one $batch).
+ * Optionally, a short-lived cache shared across requests can be enabled with
+ * "cds.softdelete.parentStateCache.ttlMillis"; its entries are scoped to the tenant of the request.
+ * Both are invalidated by the plugin's own soft delete writes, the shared cache after their commit.
+ * The shared cache lives in the memory of one application instance: writes on other instances, and writes
+ * that bypass the plugin, are only seen there once the entries expire.
+ */
+public class ParentStateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParentStateCache.class);
+    private static final int SHARED_CACHE_SIZE = 10_000;
+
+    private static final Map<RequestContext, Map<String, Boolean>> requestScoped =
+        Collections.synchronizedMap(new WeakHashMap<>());
+    private static final BoundedCache<String, SharedEntry> shared = new BoundedCache<>(SHARED_CACHE_SIZE);
+
+    private static final class SharedEntry {
+        private final Boolean isDeleted;
+        private final long expiresAt;
+
+        private SharedEntry(Boolean isDeleted, long expiresAt) {
+            this.isDeleted = isDeleted;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Returns the cached isDeleted state of an entity instance, or null if it is not cached.
+     */
+    public static Boolean get(EventContext context, String dbEntityName, Map<String, Object> keys) {
+        String cacheKey = cacheKey(dbEntityName, keys);
+
+        Map<String, Boolean> requestEntries = requestEntries(context, false);
+        if (requestEntries != null) {
+            Boolean isDeleted = requestEntries.get(cacheKey);
+            if (isDeleted != null) {
+                logger.debug("Parent state cache hit (request) for {}", cacheKey);
+                return isDeleted;
+            }
+        }
+
+        if (ttlMillis(context) > 0) {
+            String sharedKey = tenantPrefix(context) + cacheKey;
+            SharedEntry entry = shared.get(sharedKey);
+            if (entry != null) {
+                if (entry.expiresAt > System.currentTimeMillis()) {
+                    logger.debug("Parent state cache hit (shared) for {}", sharedKey);
+                    return entry.isDeleted;
+                }
+                shared.remove(sharedKey);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caches the isDeleted state of an entity instance for the current request
+     * and, if enabled, in the shared cache.
+     */
+    public static void put(EventContext context, String dbEntityName, Map<String, Object> keys, Boolean isDeleted) {
+        String cacheKey = cacheKey(dbEntityName, keys);
+
+        Map<String, Boolean> requestEntries = requestEntries(context, true);
+        if (requestEntries != null) {
+            requestEntries.put(cacheKey, isDeleted);
+        }
+
+        long ttlMillis = ttlMillis(context);
+        if (ttlMillis > 0) {
+            shared.put(tenantPrefix(context) + cacheKey, new SharedEntry(isDeleted, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Invalidates all cached states of the given database entities. The request scope is invalidated at once,
+     * so that the request reads its own writes. The shared cache is invalidated after the current change set
+     * has been committed, so that a concurrent request cannot cache the state from before the commit again;
+     * without an active change set, it is invalidated at once.
+     */
+    public static void invalidate(EventContext context, Collection<String> dbEntityNames) {
+        Map<String, Boolean> requestEntries = requestEntries(context, false);
+        if (requestEntries != null) {
+            // Iterating a synchronized map's views requires its lock
+            synchronized (requestEntries) {
+                requestEntries.keySet().removeIf(cacheKey -> matchesAny(cacheKey, dbEntityNames));
+            }
+        }
+        if (ttlMillis(context) <= 0 && shared.size() == 0) {
+            return;
+        }
+        String tenantPrefix = tenantPrefix(context);
+        if (ChangeSetContext.isActive()) {
+            ChangeSetContext.getCurrent().register(new ChangeSetListener() {
+                @Override
+                public void afterClose(boolean completed) {
+                    if (completed) {
+                        invalidateShared(tenantPrefix, dbEntityNames);
+                    }
+                }
+            });
+        } else {
+            invalidateShared(tenantPrefix, dbEntityNames);
+        }
+    }
+
+    private static void invalidateShared(String tenantPrefix, Collection<String> dbEntityNames) {
+        // Entries are removed by prefix; the shared cache is small and invalidations are rare
+        shared.removeIf(sharedKey -> sharedKey.startsWith(tenantPrefix)
+            && matchesAny(sharedKey.substring(tenantPrefix.length()), dbEntityNames));
+    }
+
+    private static boolean matchesAny(String cacheKey, Collection<String> dbEntityNames) {
+        for (String dbEntityName : dbEntityNames) {
+            if (cacheKey.startsWith(dbEntityName + "|")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long ttlMillis(EventContext context) {
+        return EntityMetadataRegistry.forModel(context.getModel()).getParentStateCacheTtlMillis(context.getCdsRuntime());
+    }
+
+    private static Map<String, Boolean> requestEntries(EventContext context, boolean create) {
+        if (!RequestContext.isActive()) {
+            return null;
+        }
+        RequestContext requestContext = RequestContext.getCurrent(context.getCdsRuntime());
+        if (create) {
+            return requestScoped.computeIfAbsent(requestContext, rc -> Collections.synchronizedMap(new HashMap<>()));
+        }
+        return requestScoped.get(requestContext);
+    }
+
+    /**
+     * Prefix of the shared cache keys of the current tenant, so that tenants never see each other's states.
+     */
+    private static String tenantPrefix(EventContext context) {
+        String tenant = context.getUserInfo() != null ? context.getUserInfo().getTenant() : null;
+        return (tenant != null ? tenant : "") + "#";
+    }
+
+    private static String cacheKey(String dbEntityName, Map<String, Object> keys) {
+        return dbEntityName + "|" + new TreeMap<>(keys);
+    }
+}
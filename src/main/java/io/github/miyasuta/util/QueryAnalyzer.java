@@ -2,11 +2,17 @@ package io.github.miyasuta.util;
 
 import com.sap.cds.ql.cqn.CqnComparisonPredicate;
 import com.sap.cds.ql.cqn.CqnConnectivePredicate;
+import com.sap.cds.ql.cqn.CqnElementRef;
 import com.sap.cds.ql.cqn.CqnPredicate;
+import com.sap.cds.ql.cqn.CqnReference;
 import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.ql.cqn.CqnSelectListItem;
+import com.sap.cds.ql.cqn.CqnVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 /**
  * Analyzes CQN queries to determine query characteristics and extract filter values.
  */
@@ -15,6 +21,50 @@ public class QueryAnalyzer {
     private static final Logger logger = LoggerFactory.getLogger(QueryAnalyzer.class);
     private static final String FIELD_IS_DELETED = "isDeleted";
     private static final String FIELD_IS_DELETED_DISPLAY = "isDeletedDisplay";
+    private static final String FIELD_IS_ACTIVE_ENTITY = "IsActiveEntity";
+
+    /**
+     * Classifies a READ query in a single pass over its ref, WHERE clause and select list.
+     * The query must select from an entity ref (not from a subquery).
+     */
+    public static QueryShape classify(CqnSelect select) {
+        List<? extends CqnReference.Segment> segments = select.ref().segments();
+        CqnPredicate rootFilter = segments.get(0).filter().orElse(null);
+        boolean hasRootFilter = rootFilter != null;
+        boolean isByKeyAccess = hasRootFilter && segments.size() == 1;
+        boolean isNavigationPath = hasRootFilter && segments.size() > 1;
+
+        boolean isQueryingDrafts = rootFilter != null && extractIsActiveEntityValue(rootFilter);
+        Boolean userIsDeletedValue = null;
+        boolean displayFieldInWhere = false;
+        if (select.where().isPresent()) {
+            CqnPredicate where = select.where().get();
+            isQueryingDrafts = isQueryingDrafts || extractIsActiveEntityValue(where);
+            userIsDeletedValue = extractIsDeletedValue(where);
+            displayFieldInWhere = referencesElement(where, FIELD_IS_DELETED_DISPLAY);
+        }
+
+        boolean hasExpands = select.items().stream().anyMatch(CqnSelectListItem::isExpand);
+
+        return new QueryShape(isByKeyAccess, isNavigationPath, isQueryingDrafts, userIsDeletedValue,
+            displayFieldInWhere, hasExpands);
+    }
+
+    /**
+     * Checks whether the predicate references an element with the given name (in any predicate form).
+     */
+    public static boolean referencesElement(CqnPredicate predicate, String elementName) {
+        boolean[] found = { false };
+        predicate.accept(new CqnVisitor() {
+            @Override
+            public void visit(CqnElementRef ref) {
+                if (elementName.equals(ref.lastSegment())) {
+                    found[0] = true;
+                }
+            }
+        });
+        return found[0];
+    }
 
     /**
      * Checks if a query is a by-key access (direct access using primary keys).
@@ -131,7 +181,7 @@ public class QueryAnalyzer {
 
             if (comparison.left().isRef()) {
                 String refName = comparison.left().asRef().lastSegment();
-                if ("IsActiveEntity".equals(refName) && comparison.right().isLiteral()) {
+                if (FIELD_IS_ACTIVE_ENTITY.equals(refName) && comparison.right().isLiteral()) {
                     Object value = comparison.right().asLiteral().value();
                     // Return true only if IsActiveEntity=false (querying draft records)
                     return Boolean.FALSE.equals(value);
@@ -0,0 +1,74 @@
+package io.github.miyasuta.util;
+
+/**
+ * Compact, immutable description of the characteristics of a READ query that are relevant for soft delete filtering.
+ * Created by {@link QueryAnalyzer#classify(com.sap.cds.ql.cqn.CqnSelect)}.
+ */
+public final class QueryShape {
+
+    private final boolean byKeyAccess;
+    private final boolean navigationPath;
+    private final boolean queryingDraftRecords;
+    private final Boolean userIsDeletedValue;
+    private final boolean displayFieldInWhere;
+    private final boolean expands;
+
+    QueryShape(boolean byKeyAccess, boolean navigationPath, boolean queryingDraftRecords,
+               Boolean userIsDeletedValue, boolean displayFieldInWhere, boolean expands) {
+        this.byKeyAccess = byKeyAccess;
+        this.navigationPath = navigationPath;
+        this.queryingDraftRecords = queryingDraftRecords;
+        this.userIsDeletedValue = userIsDeletedValue;
+        this.displayFieldInWhere = displayFieldInWhere;
+        this.expands = expands;
+    }
+
+    /**
+     * Direct access using primary keys on a single ref segment (e.g. Orders(ID=...)).
+     */
+    public boolean isByKeyAccess() {
+        return byKeyAccess;
+    }
+
+    /**
+     * Navigation from a keyed parent (e.g. Orders(ID=...)/items).
+     */
+    public boolean isNavigationPath() {
+        return navigationPath;
+    }
+
+    /**
+     * The query contains IsActiveEntity=false in the WHERE clause or the root segment filter.
+     */
+    public boolean isQueryingDraftRecords() {
+        return queryingDraftRecords;
+    }
+
+    /**
+     * isDeleted (or isDeletedDisplay) value specified by the user in the WHERE clause, or null.
+     */
+    public Boolean getUserIsDeletedValue() {
+        return userIsDeletedValue;
+    }
+
+    /**
+     * The WHERE clause references isDeletedDisplay, which has to be rewritten to isDeleted.
+     */
+    public boolean isDisplayFieldInWhere() {
+        return displayFieldInWhere;
+    }
+
+    /**
+     * The select list contains expands.
+     */
+    public boolean hasExpands() {
+        return expands;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryShape(byKey=" + byKeyAccess + ", navigation=" + navigationPath
+            + ", drafts=" + queryingDraftRecords + ", isDeleted=" + userIsDeletedValue
+            + ", displayField=" + displayFieldInWhere + ", expands=" + expands + ")";
+    }
+}
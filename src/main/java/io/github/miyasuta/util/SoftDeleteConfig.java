@@ -0,0 +1,196 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.services.runtime.CdsRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Reads plugin configuration from the CDS environment (e.g. application.yaml).
+ * All properties are prefixed with "cds.softdelete.".
+ */
+public class SoftDeleteConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftDeleteConfig.class);
+
+    public static final String PROPERTY_PREFIX = "cds.softdelete.";
+    public static final String PROPERTY_CASCADE_MODE = PROPERTY_PREFIX + "cascade.mode";
+    public static final String PROPERTY_CASCADE_PAGE_SIZE = PROPERTY_PREFIX + "cascade.pageSize";
+    public static final String PROPERTY_PARENT_STATE_CACHE_TTL = PROPERTY_PREFIX + "parentStateCache.ttlMillis";
+    public static final String PROPERTY_READ_PARENT_STATE = PROPERTY_PREFIX + "read.parentState";
+    public static final String PROPERTY_ASYNC_CASCADE_CHUNK_SIZE = PROPERTY_PREFIX + "cascade.async.chunkSize";
+    public static final String PROPERTY_BULK_CHUNK_SIZE = PROPERTY_PREFIX + "bulk.chunkSize";
+    public static final String PROPERTY_METRICS_ENABLED = PROPERTY_PREFIX + "metrics.enabled";
+    public static final String PROPERTY_HANDLERS_ALL_SERVICES = PROPERTY_PREFIX + "handlers.allServices";
+    public static final String PROPERTY_PURGE_INTERVAL = PROPERTY_PREFIX + "purge.interval";
+    public static final String PROPERTY_PURGE_CHUNK_SIZE = PROPERTY_PREFIX + "purge.chunkSize";
+    public static final String PROPERTY_PURGE_MAX_ROWS_PER_SECOND = PROPERTY_PREFIX + "purge.maxRowsPerSecond";
+    public static final String PROPERTY_INDEXES_FILE = PROPERTY_PREFIX + "indexes.file";
+    public static final String PROPERTY_INDEXES_DIALECT = PROPERTY_PREFIX + "indexes.dialect";
+
+    /**
+     * How composition children are soft deleted when their parent is deleted.
+     */
+    public enum CascadeMode {
+        /** One set-based UPDATE per composition level, using subselects of the parent keys. */
+        SET,
+        /** One SELECT and UPDATE per composition and parent row (legacy behavior). */
+        ROW
+    }
+
+    /**
+     * How the parent's isDeleted value is resolved for by-key and navigation reads.
+     */
+    public enum ParentStateMode {
+        /** The parent's isDeleted value is read with a separate (cached) query before the main statement. */
+        QUERY,
+        /** The parent's isDeleted value is resolved by the database with an EXISTS subquery in the main statement. */
+        INLINE
+    }
+
+    /**
+     * Returns the configured cascade mode (property "cds.softdelete.cascade.mode", default "set").
+     */
+    public static CascadeMode getCascadeMode(CdsRuntime runtime) {
+        String value = getProperty(runtime, PROPERTY_CASCADE_MODE, String.class, "set");
+        try {
+            return CascadeMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown value '{}' for {}, falling back to 'set'", value, PROPERTY_CASCADE_MODE);
+            return CascadeMode.SET;
+        }
+    }
+
+    /**
+     * Returns the number of child keys read per page when the cascade has to scan children
+     * (property "cds.softdelete.cascade.pageSize", default 1000).
+     */
+    public static int getCascadePageSize(CdsRuntime runtime) {
+        int pageSize = getProperty(runtime, PROPERTY_CASCADE_PAGE_SIZE, Integer.class, 1000);
+        return pageSize > 0 ? pageSize : 1000;
+    }
+
+    /**
+     * Returns the time-to-live of the cross-request parent state cache in milliseconds
+     * (property "cds.softdelete.parentStateCache.ttlMillis", default 0 = request-scoped caching only).
+     */
+    public static long getParentStateCacheTtlMillis(CdsRuntime runtime) {
+        return getProperty(runtime, PROPERTY_PARENT_STATE_CACHE_TTL, Long.class, 0L);
+    }
+
+    /**
+     * Returns the configured parent state mode (property "cds.softdelete.read.parentState", default "query").
+     */
+    public static ParentStateMode getParentStateMode(CdsRuntime runtime) {
+        String value = getProperty(runtime, PROPERTY_READ_PARENT_STATE, String.class, "query");
+        try {
+            return ParentStateMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown value '{}' for {}, falling back to 'query'", value, PROPERTY_READ_PARENT_STATE);
+            return ParentStateMode.QUERY;
+        }
+    }
+
+    /**
+     * Returns the maximum number of rows soft deleted per transaction by asynchronous cascades
+     * (property "cds.softdelete.cascade.async.chunkSize", default 1000).
+     */
+    public static int getAsyncCascadeChunkSize(CdsRuntime runtime) {
+        int chunkSize = getProperty(runtime, PROPERTY_ASYNC_CASCADE_CHUNK_SIZE, Integer.class, 1000);
+        return chunkSize > 0 ? chunkSize : 1000;
+    }
+
+    /**
+     * Returns the maximum number of keys processed per statement and transaction by the SoftDeleteService
+     * (property "cds.softdelete.bulk.chunkSize", default 1000).
+     */
+    public static int getBulkChunkSize(CdsRuntime runtime) {
+        int chunkSize = getProperty(runtime, PROPERTY_BULK_CHUNK_SIZE, Integer.class, 1000);
+        return chunkSize > 0 ? chunkSize : 1000;
+    }
+
+    /**
+     * Returns whether metrics are recorded when Micrometer is available
+     * (property "cds.softdelete.metrics.enabled", default true).
+     */
+    public static boolean isMetricsEnabled(CdsRuntime runtime) {
+        return getProperty(runtime, PROPERTY_METRICS_ENABLED, Boolean.class, Boolean.TRUE);
+    }
+
+    /**
+     * Returns whether the soft delete handlers are registered on all application services
+     * (property "cds.softdelete.handlers.allServices", default false), instead of only on the services
+     * whose model contains soft-delete enabled entities at startup.
+     */
+    public static boolean isHandlersOnAllServices(CdsRuntime runtime) {
+        return getProperty(runtime, PROPERTY_HANDLERS_ALL_SERVICES, Boolean.class, Boolean.FALSE);
+    }
+
+    /**
+     * Returns the interval of the scheduled purge of expired soft-deleted rows
+     * (property "cds.softdelete.purge.interval", ISO-8601 duration, e.g. "PT1H"), or null if the purge is not scheduled.
+     */
+    public static Duration getPurgeInterval(CdsRuntime runtime) {
+        String value = getProperty(runtime, PROPERTY_PURGE_INTERVAL, String.class, null);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            Duration interval = Duration.parse(value.trim());
+            return interval.isNegative() || interval.isZero() ? null : interval;
+        } catch (DateTimeParseException e) {
+            logger.warn("Invalid value '{}' for {}, purge is not scheduled", value, PROPERTY_PURGE_INTERVAL);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the maximum number of root rows physically deleted per purge transaction
+     * (property "cds.softdelete.purge.chunkSize", default 500).
+     */
+    public static int getPurgeChunkSize(CdsRuntime runtime) {
+        int chunkSize = getProperty(runtime, PROPERTY_PURGE_CHUNK_SIZE, Integer.class, 500);
+        return chunkSize > 0 ? chunkSize : 500;
+    }
+
+    /**
+     * Returns the maximum number of rows the purge deletes per second
+     * (property "cds.softdelete.purge.maxRowsPerSecond", default 0 = unlimited).
+     */
+    public static int getPurgeMaxRowsPerSecond(CdsRuntime runtime) {
+        return Math.max(0, getProperty(runtime, PROPERTY_PURGE_MAX_ROWS_PER_SECOND, Integer.class, 0));
+    }
+
+    /**
+     * Returns the file the index DDL is written to at startup (property "cds.softdelete.indexes.file"),
+     * or null if no DDL is generated.
+     */
+    public static String getIndexesFile(CdsRuntime runtime) {
+        String value = getProperty(runtime, PROPERTY_INDEXES_FILE, String.class, null);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Returns the dialect of the generated index DDL (property "cds.softdelete.indexes.dialect", default "h2").
+     */
+    public static IndexDdlGenerator.Dialect getIndexesDialect(CdsRuntime runtime) {
+        String value = getProperty(runtime, PROPERTY_INDEXES_DIALECT, String.class, "h2");
+        try {
+            return IndexDdlGenerator.Dialect.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown value '{}' for {}, falling back to 'h2'", value, PROPERTY_INDEXES_DIALECT);
+            return IndexDdlGenerator.Dialect.H2;
+        }
+    }
+
+    private static <T> T getProperty(CdsRuntime runtime, String key, Class<T> type, T defaultValue) {
+        if (runtime == null) {
+            return defaultValue;
+        }
+        T value = runtime.getEnvironment().getProperty(key, type, defaultValue);
+        return value != null ? value : defaultValue;
+    }
+}
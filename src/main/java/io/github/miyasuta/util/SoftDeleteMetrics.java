@@ -0,0 +1,103 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.services.runtime.CdsRuntime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics recorded by the soft delete handlers.
+ * This base class records nothing; if Micrometer is on the classpath and metrics are not disabled
+ * ("cds.softdelete.metrics.enabled"), {@link #initialize(CdsRuntime)} switches to {@link MicrometerSoftDeleteMetrics},
+ * which registers the meters in Micrometer's global registry.
+ */
+public class SoftDeleteMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftDeleteMetrics.class);
+    private static final String MICROMETER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+    private static final String MICROMETER_METRICS_CLASS = "io.github.miyasuta.util.MicrometerSoftDeleteMetrics";
+
+    private static volatile SoftDeleteMetrics current = new SoftDeleteMetrics();
+
+    protected SoftDeleteMetrics() {
+    }
+
+    /**
+     * Returns the active metrics implementation (no-op until initialized).
+     */
+    public static SoftDeleteMetrics get() {
+        return current;
+    }
+
+    /**
+     * Selects the metrics implementation based on the configuration and the availability of Micrometer.
+     */
+    public static void initialize(CdsRuntime runtime) {
+        if (!SoftDeleteConfig.isMetricsEnabled(runtime)) {
+            logger.debug("Soft delete metrics are disabled");
+            current = new SoftDeleteMetrics();
+            return;
+        }
+        try {
+            Class.forName(MICROMETER_REGISTRY_CLASS, false, SoftDeleteMetrics.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            logger.debug("Micrometer not found on the classpath, soft delete metrics are not recorded");
+            return;
+        }
+        try {
+            // Loaded reflectively so that this class does not link against the optional Micrometer dependency
+            current = (SoftDeleteMetrics) Class.forName(MICROMETER_METRICS_CLASS)
+                .getDeclaredConstructor().newInstance();
+            logger.debug("Soft delete metrics are recorded with Micrometer");
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.warn("Failed to initialize Micrometer soft delete metrics", e);
+        }
+    }
+
+    /**
+     * An entity instance was soft deleted by a DELETE (active) or draft cancel (draft).
+     */
+    public void softDeleted(String entityName, boolean draft) {
+    }
+
+    /**
+     * Several entity instances were soft deleted at once, e.g. by {@code SoftDeleteService.softDelete}.
+     */
+    public void softDeleted(String entityName, boolean draft, long count) {
+    }
+
+    /**
+     * Rows of an entity that were soft deleted by a cascade.
+     */
+    public void cascadeRowsUpdated(String entityName, long rows) {
+    }
+
+    /**
+     * Duration of the cascade to one composition level (the UPDATE of the children of one entity).
+     */
+    public void cascadeLevel(String entityName, long durationNanos) {
+    }
+
+    /**
+     * Decision for a draft cancel: soft delete (previously activated child) or physical delete.
+     */
+    public void draftCancelDecision(String entityName, boolean softDelete) {
+    }
+
+    /**
+     * A READ was rewritten (applied) or left untouched (skipped), and the time spent in beforeRead.
+     */
+    public void readRewrite(String entityName, boolean applied, long durationNanos) {
+    }
+
+    /**
+     * Lookup of a parent's isDeleted value, answered from the parent state cache or the database.
+     */
+    public void parentStateLookup(String entityName, boolean cached, long durationNanos) {
+    }
+
+    /**
+     * Rows of an entity that were physically deleted by the retention purge.
+     */
+    public void purgedRows(String entityName, long rows) {
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.miyasuta.util;
+
+import com.sap.cds.Result;
+import com.sap.cds.ql.CQL;
+import com.sap.cds.ql.Delete;
+import com.sap.cds.ql.Predicate;
+import com.sap.cds.ql.Select;
+import com.sap.cds.ql.cqn.CqnSelect;
+import com.sap.cds.services.persistence.PersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Physically deletes soft-deleted rows whose retention (@softdelete.retention) has expired.
+ * Entities are purged children first along the composition graph, and every purged row takes
+ * its composition children with it, so that no orphans are left behind.
+ */
+public class SoftDeletePurger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SoftDeletePurger.class);
+    private static final String FIELD_IS_DELETED = "isDeleted";
+    private static final String FIELD_DELETED_AT = "deletedAt";
+
+    /**
+     * Purges all entities with a retention and returns the number of physically deleted rows.
+     * Rows are deleted in chunks of at most chunkSize root rows (plus their composition children);
+     * every chunk is executed through the chunk runner (e.g. in its own transaction).
+     * With maxRowsPerSecond greater than 0, the purge pauses between chunks to stay below that rate.
+     */
+    public static long purge(PersistenceService db, EntityMetadataRegistry registry, Instant now, int chunkSize,
+                             int maxRowsPerSecond, Function<Supplier<Long>, Long> chunkRunner) {
+        long total = 0;
+        for (EntityMetadata entity : getPurgeOrder(registry)) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.debug("Purge interrupted before {}", entity.getDbEntityName());
+                break;
+            }
+            try {
+                total += purgeEntity(db, registry, entity, now.minus(entity.getRetention()), chunkSize,
+                    maxRowsPerSecond, chunkRunner);
+            } catch (Exception e) {
+                logger.warn("Failed to purge soft-deleted rows of '{}': {}", entity.getDbEntityName(), e.getMessage());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the entities with a retention, one per database entity, with composition children
+     * before their parents. If several entities share a database entity, the shortest retention wins.
+     */
+    static List<EntityMetadata> getPurgeOrder(EntityMetadataRegistry registry) {
+        List<EntityMetadata> entities = new ArrayList<>(registry.entities());
+        entities.sort(Comparator.comparing(EntityMetadata::getQualifiedName));
+
+        Set<String> visited = new HashSet<>();
+        Map<String, EntityMetadata> order = new LinkedHashMap<>();
+        for (EntityMetadata entity : entities) {
+            addChildrenFirst(registry, entity, visited, order);
+        }
+        return new ArrayList<>(order.values());
+    }
+
+    private static void addChildrenFirst(EntityMetadataRegistry registry, EntityMetadata entity, Set<String> visited,
+                                         Map<String, EntityMetadata> order) {
+        if (!visited.add(entity.getQualifiedName())) {
+            return;
+        }
+        for (CompositionMetadata composition : entity.getCompositions()) {
+            EntityMetadata child = registry.get(composition.getTargetEntityName());
+            if (child != null) {
+                addChildrenFirst(registry, child, visited, order);
+            }
+        }
+        if (entity.isSoftDeleteEnabled() && entity.getRetention() != null && !entity.getKeyNames().isEmpty()) {
+            order.merge(entity.getDbEntityName(), entity,
+                (existing, other) -> existing.getRetention().compareTo(other.getRetention()) <= 0 ? existing : other);
+        }
+    }
+
+    private static long purgeEntity(PersistenceService db, EntityMetadataRegistry registry, EntityMetadata entity,
+                                    Instant cutoff, int chunkSize, int maxRowsPerSecond,
+                                    Function<Supplier<Long>, Long> chunkRunner) {
+        String dbEntityName = entity.getDbEntityName();
+        List<String> keyNames = entity.getKeyNames();
+        Predicate expired = CQL.and(CQL.get(FIELD_IS_DELETED).eq(true), CQL.get(FIELD_DELETED_AT).lt(cutoff));
+
+        long total = 0;
+        long deleted;
+        do {
+            long chunkStart = System.nanoTime();
+            deleted = chunkRunner.apply(() -> {
+                Result chunk = db.run(Select.copy(KeyPredicates.keySelect(dbEntityName, keyNames, expired))
+                    .limit(chunkSize));
+                if (chunk.rowCount() == 0) {
+                    return 0L;
+                }
+                List<Map<String, Object>> keys = new ArrayList<>();
+                chunk.forEach(row -> keys.add(KeyPredicates.keys(row, keyNames)));
+
+                // Children first, then the expired rows themselves
+                long rows = deleteCompositionChildren(db, registry.getPurgePlan(entity).getRoot(),
+                    foreignKeyNames -> KeyPredicates.in(foreignKeyNames, keyNames, keys), 1);
+                long purged = db.run(Delete.from(dbEntityName)
+                    .where(CQL.and(KeyPredicates.in(keyNames, keyNames, keys), expired))).rowCount();
+                SoftDeleteMetrics.get().purgedRows(dbEntityName, purged);
+                return rows + purged;
+            });
+            total += deleted;
+            throttle(deleted, chunkStart, maxRowsPerSecond);
+        } while (deleted > 0 && !Thread.currentThread().isInterrupted());
+
+        if (total > 0) {
+            logger.info("Purged {} rows soft-deleted before {} from {} and its compositions", total, cutoff, dbEntityName);
+        }
+        return total;
+    }
+
+    /**
+     * Physically deletes the composition children (and their descendants, deepest first) of the parents
+     * matched by the predicate on the child's foreign keys, along the entity's purge plan
+     * (see {@link EntityMetadataRegistry#getPurgePlan}). Returns the number of deleted rows.
+     * Fails instead of deleting a level whose descendants lie beyond the depth limit.
+     */
+    private static long deleteCompositionChildren(PersistenceService db, CascadePlan.Node parent,
+                                                  Function<List<String>, Predicate> parentMatch, int depth) {
+        long rows = 0;
+        for (CascadePlan.Node child : parent.getChildren()) {
+            String childDbEntityName = child.getTableName();
+            Predicate childMatch = parentMatch.apply(child.getForeignKeyNames());
+
+            if (!child.getChildren().isEmpty() && !child.getKeyNames().isEmpty()) {
+                CqnSelect childKeySelect = KeyPredicates.keySelect(childDbEntityName, child.getKeyNames(), childMatch);
+
+                // Self-referencing compositions only terminate on data: stop once a level is empty
+                boolean hasRows = !child.isRecursive() || db.run(Select.copy(childKeySelect).limit(1)).rowCount() > 0;
+                if (hasRows && depth >= CascadeDeleteHandler.MAX_CASCADE_DEPTH) {
+                    // Deleting this level would orphan the levels below it: fail the chunk, so it is rolled back
+                    throw new IllegalStateException("Purge of " + childDbEntityName + " exceeded "
+                        + CascadeDeleteHandler.MAX_CASCADE_DEPTH + " levels");
+                } else if (hasRows) {
+                    rows += deleteCompositionChildren(db, child,
+                        nextForeignKeyNames -> KeyPredicates.in(nextForeignKeyNames, childKeySelect), depth + 1);
+                }
+            }
+
+            long deleted = db.run(Delete.from(childDbEntityName).where(childMatch)).rowCount();
+            SoftDeleteMetrics.get().purgedRows(childDbEntityName, deleted);
+            rows += deleted;
+        }
+        return rows;
+    }
+
+    private static void throttle(long rows, long chunkStartNanos, int maxRowsPerSecond) {
+        if (maxRowsPerSecond <= 0 || rows == 0) {
+            return;
+        }
+        long remainingNanos = rows * 1_000_000_000L / maxRowsPerSecond - (System.nanoTime() - chunkStartNanos);
+        if (remainingNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}